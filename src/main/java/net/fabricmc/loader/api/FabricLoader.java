@@ -20,7 +20,9 @@ import java.io.File;
 import java.nio.file.Path;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 import net.fabricmc.api.EnvType;
 import net.fabricmc.loader.api.entrypoint.EntrypointContainer;
@@ -133,6 +135,57 @@ public interface FabricLoader {
 	 */
 	boolean isModLoaded(String id);
 
+	/**
+	 * Gets the mods containing a file.
+	 *
+	 * <p>Lookups are answered from an index of all mod files that is built on first use, which is a lot cheaper than
+	 * probing {@link ModContainer#getPath(String)} of every mod. Builtin mods such as the game itself are not part of the
+	 * index.</p>
+	 *
+	 * @param path the location of the file from the mod roots, using {@code /} as a separator
+	 * @return the mods containing the file in load order, empty if there are none
+	 * @since 0.12.0
+	 */
+	List<ModContainer> getModsContaining(String path);
+
+	/**
+	 * Gets all mod files below a path prefix, e.g. {@code data/} for all data pack files.
+	 *
+	 * <p>This is answered from the same index as {@link #getModsContaining(String)} and costs time proportional to the
+	 * number of matches rather than the number of mods.</p>
+	 *
+	 * @param prefix the start of the file locations to match, using {@code /} as a separator
+	 * @return a sorted map from file location to the mods containing the file in load order
+	 * @since 0.12.0
+	 */
+	Map<String, List<ModContainer>> getModResources(String prefix);
+
+	/**
+	 * Submits a task to run on a worker pool shared by all mods, e.g. to load data off the main thread during startup.
+	 *
+	 * <p>Tasks can be submitted until mod initialization finished, i.e. from the {@code preLaunch}, {@code main},
+	 * {@code client} and {@code server} entrypoints. The game only starts once all tasks completed, task failures
+	 * crash it like failing entrypoints.</p>
+	 *
+	 * <p>Dependencies are either task IDs in the form {@code modid:name}, which may also refer to tasks submitted later,
+	 * or mod IDs, which wait for all tasks of that mod and thus only resolve at the end of mod initialization.
+	 * Dependencies on mods that aren't loaded are ignored. A task doesn't run if one of its dependencies failed.</p>
+	 *
+	 * <p>Tasks must not block on other tasks or on work done by the main thread, use dependencies instead. Entrypoints
+	 * may wait for the returned future.</p>
+	 *
+	 * @param modId        the ID of the submitting mod
+	 * @param name         the name of the task, unique for the mod and without {@code :}
+	 * @param dependencies the tasks or mods to wait for before running
+	 * @param task         the task to run
+	 * @return a future completing after the task ran
+	 * @throws IllegalStateException    if mod initialization already finished
+	 * @throws IllegalArgumentException if the mod isn't loaded, the task already exists or the dependencies form a
+	 *                                  cycle
+	 * @since 0.12.0
+	 */
+	CompletableFuture<Void> submitInitTask(String modId, String name, Collection<String> dependencies, Runnable task);
+
 	/**
 	 * Checks if Fabric Loader is currently running in a "development"
 	 * environment. Can be used for enabling debug mode or additional checks.
@@ -84,4 +84,101 @@ public interface MappingResolver {
 	 * @return the mapped method name, or {@code name} if no such mapping is present
 	 */
 	String mapMethodName(String namespace, String owner, String name, String descriptor);
+
+	/**
+	 * Map several class names to the mapping currently used at runtime.
+	 *
+	 * @param namespace the namespace of the provided class names
+	 * @param classNames the provided binary class names
+	 * @return the mapped class names in the same order, with {@code className} for classes without mapping
+	 * @see #mapClassName(String, String)
+	 * @since 0.12.0
+	 */
+	default String[] mapClassNames(String namespace, String... classNames) {
+		String[] ret = new String[classNames.length];
+
+		for (int i = 0; i < classNames.length; i++) {
+			ret[i] = mapClassName(namespace, classNames[i]);
+		}
+
+		return ret;
+	}
+
+	/**
+	 * Map the names of several fields of the same class to the mapping currently used at runtime.
+	 *
+	 * @param namespace the namespace of the provided field names and descriptors
+	 * @param owner the binary name of the owner class of the fields
+	 * @param names the names of the fields
+	 * @param descriptors the descriptors of the fields, matching {@code names} by index
+	 * @return the mapped field names in the same order, with {@code name} for fields without mapping
+	 * @see #mapFieldName(String, String, String, String)
+	 * @since 0.12.0
+	 */
+	default String[] mapFieldNames(String namespace, String owner, String[] names, String[] descriptors) {
+		if (names.length != descriptors.length) throw new IllegalArgumentException("names and descriptors differ in length");
+
+		String[] ret = new String[names.length];
+
+		for (int i = 0; i < names.length; i++) {
+			ret[i] = mapFieldName(namespace, owner, names[i], descriptors[i]);
+		}
+
+		return ret;
+	}
+
+	/**
+	 * Map the names of several methods of the same class to the mapping currently used at runtime.
+	 *
+	 * @param namespace the namespace of the provided method names and descriptors
+	 * @param owner the binary name of the owner class of the methods
+	 * @param names the names of the methods
+	 * @param descriptors the descriptors of the methods, matching {@code names} by index
+	 * @return the mapped method names in the same order, with {@code name} for methods without mapping
+	 * @see #mapMethodName(String, String, String, String)
+	 * @since 0.12.0
+	 */
+	default String[] mapMethodNames(String namespace, String owner, String[] names, String[] descriptors) {
+		if (names.length != descriptors.length) throw new IllegalArgumentException("names and descriptors differ in length");
+
+		String[] ret = new String[names.length];
+
+		for (int i = 0; i < names.length; i++) {
+			ret[i] = mapMethodName(namespace, owner, names[i], descriptors[i]);
+		}
+
+		return ret;
+	}
+
+	/**
+	 * Map a field or method descriptor to the mapping currently used at runtime.
+	 *
+	 * @param namespace the namespace of the provided descriptor
+	 * @param descriptor a field descriptor such as {@code "Lmypackage/MyClass;"} or a method descriptor such as
+	 *                   {@code "(I)Lmypackage/MyClass;"}
+	 * @return the descriptor with all class names mapped
+	 * @since 0.12.0
+	 */
+	default String mapDescriptor(String namespace, String descriptor) {
+		StringBuilder ret = new StringBuilder(descriptor.length());
+		int pos = 0;
+
+		while (pos < descriptor.length()) {
+			char c = descriptor.charAt(pos);
+
+			if (c == 'L') { // class type, skipped as a whole so its name can't be mistaken for a type
+				int end = descriptor.indexOf(';', pos);
+				if (end < 0) throw new IllegalArgumentException("Invalid descriptor: " + descriptor);
+
+				String className = descriptor.substring(pos + 1, end).replace('/', '.');
+				ret.append('L').append(mapClassName(namespace, className).replace('.', '/')).append(';');
+				pos = end + 1;
+			} else {
+				ret.append(c);
+				pos++;
+			}
+		}
+
+		return ret.toString();
+	}
 }
@@ -16,7 +16,11 @@
 
 package net.fabricmc.loader.api;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Optional;
 
 import net.fabricmc.loader.api.metadata.ModMetadata;
 
@@ -61,4 +65,23 @@ public interface ModContainer {
 		Path root = getRootPath();
 		return root.resolve(file.replace("/", root.getFileSystem().getSeparator()));
 	}
+
+	/**
+	 * Reads a file inside the mod into a read-only buffer.
+	 *
+	 * <p>Files of mods loaded from a directory are memory mapped. Files inside a JAR are decompressed into a heap buffer,
+	 * reading from the archive directly instead of going through a {@link java.nio.file.FileSystem}. The archive is only
+	 * open for the duration of the call.</p>
+	 *
+	 * @param file The location from root, using {@code /} as a separator.
+	 * @return the file contents, or an empty optional if the file doesn't exist
+	 * @throws IOException if the file can't be read
+	 * @since 0.12.0
+	 */
+	default Optional<ByteBuffer> readResource(String file) throws IOException {
+		Path path = getPath(file);
+		if (!Files.isRegularFile(path)) return Optional.empty();
+
+		return Optional.of(ByteBuffer.wrap(Files.readAllBytes(path)).asReadOnlyBuffer());
+	}
 }
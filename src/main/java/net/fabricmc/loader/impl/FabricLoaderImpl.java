@@ -32,6 +32,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 import org.objectweb.asm.Opcodes;
@@ -52,6 +53,7 @@ import net.fabricmc.loader.impl.discovery.ModResolutionException;
 import net.fabricmc.loader.impl.discovery.ModResolver;
 import net.fabricmc.loader.impl.discovery.RuntimeModRemapper;
 import net.fabricmc.loader.impl.entrypoint.EntrypointStorage;
+import net.fabricmc.loader.impl.entrypoint.ModInitExecutor;
 import net.fabricmc.loader.impl.game.GameProvider;
 import net.fabricmc.loader.impl.gui.FabricGuiEntry;
 import net.fabricmc.loader.impl.launch.FabricLauncherBase;
@@ -80,6 +82,7 @@ public final class FabricLoaderImpl extends net.fabricmc.loader.FabricLoader {
 
 	private final Map<String, LanguageAdapter> adapterMap = new HashMap<>();
 	private final EntrypointStorage entrypointStorage = new EntrypointStorage();
+	private final ModInitExecutor initExecutor = new ModInitExecutor(this::isModLoaded);
 	private final AccessWidener accessWidener = new AccessWidener();
 
 	private boolean frozen = false;
@@ -87,6 +90,7 @@ public final class FabricLoaderImpl extends net.fabricmc.loader.FabricLoader {
 	private Object gameInstance;
 
 	private MappingResolver mappingResolver;
+	private volatile ModResourceIndex resourceIndex;
 	private GameProvider provider;
 	private Path gameDir;
 	private Path configDir;
@@ -288,6 +292,7 @@ public final class FabricLoaderImpl extends net.fabricmc.loader.FabricLoader {
 		postprocessModMetadata();
 		setupLanguageAdapters();
 		setupMods();
+		entrypointStorage.freeze();
 	}
 
 	public boolean hasEntrypoints(String key) {
@@ -331,6 +336,39 @@ public final class FabricLoaderImpl extends net.fabricmc.loader.FabricLoader {
 		return modMap.containsKey(id);
 	}
 
+	@Override
+	public List<net.fabricmc.loader.api.ModContainer> getModsContaining(String path) {
+		return getResourceIndex().getOwners(path);
+	}
+
+	@Override
+	public Map<String, List<net.fabricmc.loader.api.ModContainer>> getModResources(String prefix) {
+		return getResourceIndex().getByPrefix(prefix);
+	}
+
+	@Override
+	public CompletableFuture<Void> submitInitTask(String modId, String name, Collection<String> dependencies, Runnable task) {
+		return initExecutor.submit(modId, name, dependencies, task);
+	}
+
+	private ModResourceIndex getResourceIndex() {
+		ModResourceIndex ret = resourceIndex;
+
+		if (ret == null) {
+			synchronized (this) {
+				ret = resourceIndex;
+
+				if (ret == null) {
+					if (!frozen) throw new IllegalStateException("Mods aren't loaded yet!");
+
+					resourceIndex = ret = ModResourceIndex.create(mods);
+				}
+			}
+		}
+
+		return ret;
+	}
+
 	@Override
 	public boolean isDevelopmentEnvironment() {
 		return FabricLauncherBase.getLauncher().isDevelopment();
@@ -472,6 +510,17 @@ public final class FabricLoaderImpl extends net.fabricmc.loader.FabricLoader {
 		}
 	}
 
+	/**
+	 * Called once all mod initializers ran, right before the game starts.
+	 */
+	public void finishModInit() {
+		initExecutor.awaitAll();
+
+		if (FabricLauncherBase.getLauncher() instanceof Knot) {
+			((Knot) FabricLauncherBase.getLauncher()).onModInitFinished();
+		}
+	}
+
 	public AccessWidener getAccessWidener() {
 		return accessWidener;
 	}
@@ -16,79 +16,240 @@
 
 package net.fabricmc.loader.impl;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Supplier;
 
+import org.objectweb.asm.commons.Remapper;
+
 import net.fabricmc.loader.api.MappingResolver;
+import net.fabricmc.loader.impl.util.mappings.BinaryTinyTree;
 import net.fabricmc.mapping.tree.ClassDef;
 import net.fabricmc.mapping.tree.Descriptored;
 import net.fabricmc.mapping.tree.TinyTree;
-import net.fabricmc.mappings.EntryTriple;
 
+/**
+ * Resolves names through the mappings, building the lookup tables per class on first use.
+ *
+ * <p>Only the classes a mod actually asks for get their member tables built. Member lookups are binary searches over
+ * arrays sorted by name and descriptor, so they don't allocate. All tables are safe for concurrent use.</p>
+ */
 class MappingResolverImpl implements MappingResolver {
 	private final Supplier<TinyTree> mappingsSupplier;
 	private final Set<String> namespaces;
-	private final Map<String, NamespaceData> namespaceDataMap = new HashMap<>();
+	private final Map<String, NamespaceData> namespaceDataMap = new ConcurrentHashMap<>();
+	private final Map<String, Map<String, ClassDef>> classIndices = new ConcurrentHashMap<>();
 	private final String targetNamespace;
 
-	private static class NamespaceData {
-		private final Map<String, String> classNames = new HashMap<>();
-		private final Map<String, String> classNamesInverse = new HashMap<>();
-		private final Map<EntryTriple, String> fieldNames = new HashMap<>();
-		private final Map<EntryTriple, String> methodNames = new HashMap<>();
+	private final class NamespaceData {
+		private final String namespace;
+		private final Map<String, ClassData> classes = new ConcurrentHashMap<>();
+		private final Map<String, ClassData> internalClasses = new ConcurrentHashMap<>();
+		private final Map<String, String> classNamesInverse = new ConcurrentHashMap<>();
+		private final Remapper remapper = new NamespaceRemapper(this);
+
+		NamespaceData(String namespace) {
+			this.namespace = namespace;
+		}
+
+		ClassData getClassData(String className) {
+			ClassData ret = classes.get(className);
+			if (ret != null) return ret;
+
+			return classes.computeIfAbsent(className, name -> {
+				ClassDef classDef = findClass(namespace, name.replace('.', '/'));
+
+				return classDef != null ? new ClassData(classDef, namespace, targetNamespace) : ClassData.MISSING;
+			});
+		}
+
+		/**
+		 * Same as {@link #getClassData} for internal names, sharing the class data.
+		 */
+		ClassData getClassDataInternal(String internalName) {
+			ClassData ret = internalClasses.get(internalName);
+			if (ret != null) return ret;
+
+			return internalClasses.computeIfAbsent(internalName, name -> getClassData(name.replace('/', '.')));
+		}
+
+		String unmapClassName(String className) {
+			String ret = classNamesInverse.get(className);
+			if (ret != null) return ret;
+
+			return classNamesInverse.computeIfAbsent(className, name -> {
+				ClassDef classDef = findClass(targetNamespace, name.replace('.', '/'));
+
+				return classDef != null ? replaceSlashesWithDots(classDef.getName(namespace)) : name;
+			});
+		}
 	}
 
-	MappingResolverImpl(Supplier<TinyTree> mappingsSupplier, String targetNamespace) {
-		this.mappingsSupplier = mappingsSupplier;
-		this.targetNamespace = targetNamespace;
-		namespaces = Collections.unmodifiableSet(new HashSet<>(mappingsSupplier.get().getMetadata().getNamespaces()));
+	private static final class ClassData {
+		static final ClassData MISSING = new ClassData();
+
+		final String mappedName;
+		final String mappedInternalName;
+		final MemberTable fields;
+		final MemberTable methods;
+
+		private ClassData() {
+			this.mappedName = null;
+			this.mappedInternalName = null;
+			this.fields = MemberTable.EMPTY;
+			this.methods = MemberTable.EMPTY;
+		}
+
+		ClassData(ClassDef classDef, String fromNamespace, String toNamespace) {
+			this.mappedInternalName = classDef.getName(toNamespace);
+			this.mappedName = replaceSlashesWithDots(mappedInternalName);
+			this.fields = new MemberTable(classDef.getFields(), fromNamespace, toNamespace);
+			this.methods = new MemberTable(classDef.getMethods(), fromNamespace, toNamespace);
+		}
 	}
 
-	protected final NamespaceData getNamespaceData(String namespace) {
-		return namespaceDataMap.computeIfAbsent(namespace, (fromNamespace) -> {
-			if (!namespaces.contains(namespace)) {
-				throw new IllegalArgumentException("Unknown namespace: " + namespace);
+	/**
+	 * Remapper for descriptors, working on the internal names ASM uses directly instead of converting to binary names.
+	 */
+	private static final class NamespaceRemapper extends Remapper {
+		private final NamespaceData data;
+
+		NamespaceRemapper(NamespaceData data) {
+			this.data = data;
+		}
+
+		@Override
+		public String map(String internalName) {
+			String ret = data.getClassDataInternal(internalName).mappedInternalName;
+
+			return ret != null ? ret : internalName;
+		}
+	}
+
+	/**
+	 * Members of a class sorted by name and descriptor in the source namespace, with their names in the target
+	 * namespace.
+	 */
+	private static final class MemberTable {
+		static final MemberTable EMPTY = new MemberTable(Collections.emptyList(), null, null);
+
+		private final String[] names;
+		private final String[] descriptors;
+		private final String[] mappedNames;
+
+		MemberTable(Collection<? extends Descriptored> members, String fromNamespace, String toNamespace) {
+			String[][] entries = new String[members.size()][];
+			int i = 0;
+
+			for (Descriptored member : members) {
+				entries[i++] = new String[] { member.getName(fromNamespace), member.getDescriptor(fromNamespace), member.getName(toNamespace) };
 			}
 
-			NamespaceData data = new NamespaceData();
-			TinyTree mappings = mappingsSupplier.get();
-			Map<String, String> classNameMap = new HashMap<>();
+			Arrays.sort(entries, (a, b) -> compare(a[0], a[1], b[0], b[1])); // stable, duplicates stay in definition order
+			int count = 0;
 
-			for (ClassDef classEntry : mappings.getClasses()) {
-				String fromClass = mapClassName(classNameMap, classEntry.getName(fromNamespace));
-				String toClass = mapClassName(classNameMap, classEntry.getName(targetNamespace));
+			for (i = 0; i < entries.length; i++) {
+				// mappings defining a member twice resolve to the last definition, like a map filled in order would
+				if (i + 1 < entries.length && compare(entries[i][0], entries[i][1], entries[i + 1][0], entries[i + 1][1]) == 0) continue;
 
-				data.classNames.put(fromClass, toClass);
-				data.classNamesInverse.put(toClass, fromClass);
+				entries[count++] = entries[i];
+			}
 
-				String mappedClassName = mapClassName(classNameMap, fromClass);
+			names = new String[count];
+			descriptors = new String[count];
+			mappedNames = new String[count];
 
-				recordMember(fromNamespace, classEntry.getFields(), data.fieldNames, mappedClassName);
-				recordMember(fromNamespace, classEntry.getMethods(), data.methodNames, mappedClassName);
+			for (i = 0; i < count; i++) {
+				names[i] = entries[i][0];
+				descriptors[i] = entries[i][1];
+				mappedNames[i] = entries[i][2];
 			}
+		}
+
+		String get(String name, String descriptor) {
+			int low = 0;
+			int high = names.length - 1;
 
-			return data;
-		});
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				int cmp = compare(names[mid], descriptors[mid], name, descriptor);
+
+				if (cmp < 0) {
+					low = mid + 1;
+				} else if (cmp > 0) {
+					high = mid - 1;
+				} else {
+					return mappedNames[mid];
+				}
+			}
+
+			return null;
+		}
+
+		private static int compare(String nameA, String descA, String nameB, String descB) {
+			int ret = compareNullable(nameA, nameB);
+
+			return ret != 0 ? ret : compareNullable(descA, descB);
+		}
+
+		private static int compareNullable(String a, String b) {
+			if (a == null) return b == null ? 0 : -1;
+			if (b == null) return 1;
+
+			return a.compareTo(b);
+		}
 	}
 
-	private static String replaceSlashesWithDots(String cname) {
-		return cname.replace('/', '.');
+	MappingResolverImpl(Supplier<TinyTree> mappingsSupplier, String targetNamespace) {
+		this.mappingsSupplier = mappingsSupplier;
+		this.targetNamespace = targetNamespace;
+		namespaces = Collections.unmodifiableSet(new HashSet<>(mappingsSupplier.get().getMetadata().getNamespaces()));
 	}
 
-	private String mapClassName(Map<String, String> classNameMap, String s) {
-		return classNameMap.computeIfAbsent(s, MappingResolverImpl::replaceSlashesWithDots);
+	private NamespaceData getNamespaceData(String namespace) {
+		NamespaceData ret = namespaceDataMap.get(namespace);
+		if (ret != null) return ret;
+
+		if (!namespaces.contains(namespace)) {
+			throw new IllegalArgumentException("Unknown namespace: " + namespace);
+		}
+
+		return namespaceDataMap.computeIfAbsent(namespace, NamespaceData::new);
 	}
 
-	private <T extends Descriptored> void recordMember(String fromNamespace, Collection<T> descriptoredList, Map<EntryTriple, String> putInto, String fromClass) {
-		for (T descriptored : descriptoredList) {
-			EntryTriple fromEntry = new EntryTriple(fromClass, descriptored.getName(fromNamespace), descriptored.getDescriptor(fromNamespace));
-			putInto.put(fromEntry, descriptored.getName(targetNamespace));
+	/**
+	 * Finds a class by its internal name in a namespace.
+	 */
+	private ClassDef findClass(String namespace, String name) {
+		TinyTree mappings = mappingsSupplier.get();
+
+		if (mappings instanceof BinaryTinyTree) { // has its own sorted index
+			return ((BinaryTinyTree) mappings).getClassDef(name, namespace);
 		}
+
+		return classIndices.computeIfAbsent(namespace, ns -> {
+			if (ns.equals(mappings.getMetadata().getNamespaces().get(0))) {
+				return mappings.getDefaultNamespaceClassMap();
+			}
+
+			Map<String, ClassDef> ret = new HashMap<>();
+
+			for (ClassDef classDef : mappings.getClasses()) {
+				ret.put(classDef.getName(ns), classDef);
+			}
+
+			return ret;
+		}).get(name);
+	}
+
+	private static String replaceSlashesWithDots(String cname) {
+		return cname.replace('/', '.');
 	}
 
 	@Override
@@ -107,7 +268,9 @@ class MappingResolverImpl implements MappingResolver {
 			throw new IllegalArgumentException("Class names must be provided in dot format: " + className);
 		}
 
-		return getNamespaceData(namespace).classNames.getOrDefault(className, className);
+		String ret = getNamespaceData(namespace).getClassData(className).mappedName;
+
+		return ret != null ? ret : className;
 	}
 
 	@Override
@@ -116,7 +279,7 @@ class MappingResolverImpl implements MappingResolver {
 			throw new IllegalArgumentException("Class names must be provided in dot format: " + className);
 		}
 
-		return getNamespaceData(namespace).classNamesInverse.getOrDefault(className, className);
+		return getNamespaceData(namespace).unmapClassName(className);
 	}
 
 	@Override
@@ -125,7 +288,9 @@ class MappingResolverImpl implements MappingResolver {
 			throw new IllegalArgumentException("Class names must be provided in dot format: " + owner);
 		}
 
-		return getNamespaceData(namespace).fieldNames.getOrDefault(new EntryTriple(owner, name, descriptor), name);
+		String ret = getNamespaceData(namespace).getClassData(owner).fields.get(name, descriptor);
+
+		return ret != null ? ret : name;
 	}
 
 	@Override
@@ -134,6 +299,63 @@ class MappingResolverImpl implements MappingResolver {
 			throw new IllegalArgumentException("Class names must be provided in dot format: " + owner);
 		}
 
-		return getNamespaceData(namespace).methodNames.getOrDefault(new EntryTriple(owner, name, descriptor), name);
+		String ret = getNamespaceData(namespace).getClassData(owner).methods.get(name, descriptor);
+
+		return ret != null ? ret : name;
+	}
+
+	@Override
+	public String[] mapClassNames(String namespace, String... classNames) {
+		NamespaceData data = getNamespaceData(namespace);
+		String[] ret = new String[classNames.length];
+
+		for (int i = 0; i < classNames.length; i++) {
+			String className = classNames[i];
+
+			if (className.indexOf('/') >= 0) {
+				throw new IllegalArgumentException("Class names must be provided in dot format: " + className);
+			}
+
+			String mapped = data.getClassData(className).mappedName;
+			ret[i] = mapped != null ? mapped : className;
+		}
+
+		return ret;
+	}
+
+	@Override
+	public String[] mapFieldNames(String namespace, String owner, String[] names, String[] descriptors) {
+		return mapMemberNames(namespace, owner, names, descriptors, false);
+	}
+
+	@Override
+	public String[] mapMethodNames(String namespace, String owner, String[] names, String[] descriptors) {
+		return mapMemberNames(namespace, owner, names, descriptors, true);
+	}
+
+	private String[] mapMemberNames(String namespace, String owner, String[] names, String[] descriptors, boolean methods) {
+		if (owner.indexOf('/') >= 0) {
+			throw new IllegalArgumentException("Class names must be provided in dot format: " + owner);
+		}
+
+		if (names.length != descriptors.length) throw new IllegalArgumentException("names and descriptors differ in length");
+
+		ClassData classData = getNamespaceData(namespace).getClassData(owner);
+		MemberTable table = methods ? classData.methods : classData.fields;
+		String[] ret = new String[names.length];
+
+		for (int i = 0; i < names.length; i++) {
+			String mapped = table.get(names[i], descriptors[i]);
+			ret[i] = mapped != null ? mapped : names[i];
+		}
+
+		return ret;
+	}
+
+	@Override
+	public String mapDescriptor(String namespace, String descriptor) {
+		Remapper remapper = getNamespaceData(namespace).remapper;
+
+		return descriptor.startsWith("(") ? remapper.mapMethodDesc(descriptor) : remapper.mapDesc(descriptor);
 	}
 }
@@ -17,8 +17,16 @@
 package net.fabricmc.loader.impl;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 import net.fabricmc.loader.api.metadata.ModMetadata;
 import net.fabricmc.loader.impl.metadata.LoaderModMetadata;
@@ -85,6 +93,46 @@ public class ModContainerImpl extends net.fabricmc.loader.ModContainer {
 		}
 	}
 
+	@Override
+	public Optional<ByteBuffer> readResource(String file) throws IOException {
+		if (Files.isDirectory(originPath)) {
+			Path path = originPath.resolve(file.replace("/", originPath.getFileSystem().getSeparator()));
+			if (!Files.isRegularFile(path)) return Optional.empty();
+
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+				return Optional.of(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+			}
+		}
+
+		try (ZipFile zf = new ZipFile(originPath.toFile())) {
+			ZipEntry entry = zf.getEntry(file);
+			if (entry == null || entry.isDirectory()) return Optional.empty();
+
+			return Optional.of(read(zf, entry));
+		}
+	}
+
+	private static ByteBuffer read(ZipFile zf, ZipEntry entry) throws IOException {
+		try (InputStream is = zf.getInputStream(entry)) {
+			long size = entry.getSize();
+			byte[] data = new byte[size >= 0 ? (int) size : 8192];
+			int pos = 0;
+			int len;
+
+			while ((len = is.read(data, pos, data.length - pos)) >= 0) {
+				pos += len;
+
+				if (pos == data.length) {
+					if (size >= 0) break;
+
+					data = Arrays.copyOf(data, data.length * 2);
+				}
+			}
+
+			return ByteBuffer.wrap(data, 0, pos).slice().asReadOnlyBuffer();
+		}
+	}
+
 	@Override
 	public LoaderModMetadata getInfo() {
 		return info;
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.impl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import net.fabricmc.loader.api.ModContainer;
+import net.fabricmc.loader.impl.util.log.Log;
+import net.fabricmc.loader.impl.util.log.LogCategory;
+
+/**
+ * Index of all files provided by the loaded mods, mapping each path to the mods containing it in load order.
+ *
+ * <p>Builtin mods (the game and the Java runtime) are not indexed, walking the game jar alone would cost more than
+ * every actual mod together.</p>
+ */
+final class ModResourceIndex {
+	private final NavigableMap<String, List<ModContainer>> owners = new TreeMap<>();
+
+	static ModResourceIndex create(List<ModContainerImpl> mods) {
+		long startTime = System.nanoTime();
+		ModResourceIndex ret = new ModResourceIndex();
+		int count = 0;
+
+		for (ModContainerImpl mod : mods) {
+			if (mod.getInfo().getType().equals("builtin")) continue;
+
+			Path origin = mod.getOriginPath();
+
+			try {
+				if (Files.isDirectory(origin)) {
+					try (Stream<Path> stream = Files.walk(origin)) {
+						for (Path file : (Iterable<Path>) stream::iterator) {
+							if (!Files.isRegularFile(file)) continue;
+
+							ret.add(origin.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/"), mod);
+						}
+					}
+				} else if (Files.isRegularFile(origin)) {
+					try (ZipFile zf = new ZipFile(origin.toFile())) {
+						for (Enumeration<? extends ZipEntry> e = zf.entries(); e.hasMoreElements(); ) {
+							ZipEntry entry = e.nextElement();
+							if (!entry.isDirectory()) ret.add(entry.getName(), mod);
+						}
+					}
+				}
+
+				count++;
+			} catch (IOException e) {
+				Log.warn(LogCategory.GENERAL, "Failed to index resources of %s", mod, e);
+			}
+		}
+
+		Log.debug(LogCategory.GENERAL, "Indexed %d resources of %d mods in %.1f ms", ret.owners.size(), count, (System.nanoTime() - startTime) * 1e-6);
+
+		return ret;
+	}
+
+	private void add(String path, ModContainer mod) {
+		List<ModContainer> prev = owners.get(path);
+
+		if (prev == null) {
+			owners.put(path, Collections.singletonList(mod));
+		} else {
+			List<ModContainer> next = new ArrayList<>(prev.size() + 1);
+			next.addAll(prev);
+			next.add(mod);
+			owners.put(path, Collections.unmodifiableList(next));
+		}
+	}
+
+	List<ModContainer> getOwners(String path) {
+		return owners.getOrDefault(path, Collections.emptyList());
+	}
+
+	/**
+	 * Gets all indexed paths starting with the given prefix, in lexicographic order.
+	 */
+	NavigableMap<String, List<ModContainer>> getByPrefix(String prefix) {
+		if (prefix.isEmpty()) return Collections.unmodifiableNavigableMap(owners);
+
+		return Collections.unmodifiableNavigableMap(owners.subMap(prefix, true, prefix + Character.MAX_VALUE, false));
+	}
+}
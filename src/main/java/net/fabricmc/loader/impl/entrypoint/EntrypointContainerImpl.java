@@ -24,7 +24,7 @@ public final class EntrypointContainerImpl<T> implements EntrypointContainer<T>
 	private final String key;
 	private final Class<T> type;
 	private final EntrypointStorage.Entry entry;
-	private T instance;
+	private volatile T instance;
 
 	/**
 	 * Create EntrypointContainer with lazy init.
@@ -47,17 +47,27 @@ public final class EntrypointContainerImpl<T> implements EntrypointContainer<T>
 
 	@SuppressWarnings("deprecation")
 	@Override
-	public synchronized T getEntrypoint() {
-		if (instance == null) {
-			try {
-				instance = entry.getOrCreate(type);
-				assert instance != null;
-			} catch (Exception ex) {
-				throw new EntrypointException(key, getProvider().getMetadata().getId(), ex);
+	public T getEntrypoint() {
+		T ret = instance;
+
+		if (ret == null) {
+			synchronized (this) {
+				ret = instance;
+
+				if (ret == null) {
+					try {
+						ret = entry.getOrCreate(type);
+						assert ret != null;
+					} catch (Exception ex) {
+						throw new EntrypointException(key, getProvider().getMetadata().getId(), ex);
+					}
+
+					instance = ret;
+				}
 			}
 		}
 
-		return instance;
+		return ret;
 	}
 
 	@Override
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.impl.entrypoint;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import net.fabricmc.loader.api.entrypoint.EntrypointContainer;
+import net.fabricmc.loader.impl.FabricLoaderImpl;
+import net.fabricmc.loader.impl.util.SystemProperties;
+import net.fabricmc.loader.impl.util.log.Log;
+import net.fabricmc.loader.impl.util.log.LogCategory;
+import net.fabricmc.loader.impl.util.log.LogLevel;
+
+/**
+ * Measures the entrypoint stages invoked through {@link EntrypointUtils} per mod, split into class loading, instantiation
+ * and invocation.
+ *
+ * <p>Class loading is only known for entrypoints created by the default language adapter, other adapters report it as
+ * part of the instantiation. A summary of each stage is logged at debug level, or at info level together with a JSON
+ * report in {@code .fabric/entrypointProfile.json} if {@link SystemProperties#ENTRYPOINT_PROFILE} is set.</p>
+ */
+public final class EntrypointProfiler {
+	private static final String REPORT_FILE_NAME = "entrypointProfile.json"; // relative to .fabric
+	private static final int TOP_MODS = 10;
+	private static final boolean REPORT = Boolean.getBoolean(SystemProperties.ENTRYPOINT_PROFILE);
+	private static final EntrypointProfiler INSTANCE = new EntrypointProfiler();
+	private static final ThreadLocal<long[]> threadClassLoadTime = ThreadLocal.withInitial(() -> new long[1]);
+
+	private final Map<String, StageRecord> stages = new LinkedHashMap<>();
+
+	private EntrypointProfiler() { }
+
+	/**
+	 * Accounts time spent loading an entrypoint class on the current thread to the entrypoint being created.
+	 */
+	public static void recordClassLoad(long nanos) {
+		threadClassLoadTime.get()[0] += nanos;
+	}
+
+	/**
+	 * Creates an entrypoint if needed and passes it to the invoker while recording the time each part takes.
+	 *
+	 * <p>This may be called concurrently from parallel entrypoint workers, class loading is tracked per thread and the
+	 * records are only updated while holding the profiler lock.</p>
+	 */
+	static <T> void invoke(String stage, EntrypointContainer<T> container, Consumer<? super T> invoker) {
+		long[] classLoad = threadClassLoadTime.get();
+		long classLoadStart = classLoad[0];
+		long startTime = System.nanoTime();
+		long createTime = -1;
+		long classLoadEnd = 0;
+
+		try {
+			T entrypoint = container.getEntrypoint();
+			createTime = System.nanoTime() - startTime;
+			classLoadEnd = classLoad[0];
+			invoker.accept(entrypoint);
+		} finally {
+			long totalTime = System.nanoTime() - startTime;
+
+			if (createTime < 0) { // failed to create
+				createTime = totalTime;
+				classLoadEnd = classLoad[0];
+			}
+
+			INSTANCE.record(stage, container.getProvider().getMetadata().getId(), classLoadEnd - classLoadStart, createTime, totalTime - createTime);
+		}
+	}
+
+	/**
+	 * Reports the stage after all its entrypoints ran.
+	 *
+	 * @param wallTime the time the whole stage took, lower than the sum of all mods if they ran in parallel
+	 */
+	static void endStage(String stage, long wallTime) {
+		INSTANCE.endStage0(stage, wallTime);
+	}
+
+	private synchronized void record(String stage, String modId, long classLoadTime, long createTime, long invokeTime) {
+		ModRecord record = stages.computeIfAbsent(stage, StageRecord::new).mods.computeIfAbsent(modId, ModRecord::new);
+		// both are measured separately, don't let timer granularity produce negative instantiation times
+		long classLoad = Math.min(classLoadTime, createTime);
+
+		record.entrypoints++;
+		record.classLoadTime += classLoad;
+		record.instantiationTime += createTime - classLoad;
+		record.invocationTime += invokeTime;
+	}
+
+	private void endStage0(String stage, long wallTime) {
+		LogLevel level = REPORT ? LogLevel.INFO : LogLevel.DEBUG;
+		List<ModRecord> mods;
+
+		synchronized (this) {
+			StageRecord record = stages.get(stage);
+			if (record == null) return;
+
+			record.wallTime += wallTime;
+			mods = getSortedMods(record);
+		}
+
+		if (Log.shouldLog(level, LogCategory.ENTRYPOINT)) {
+			StringBuilder sb = new StringBuilder();
+			sb.append(String.format("Entrypoint stage '%s' took %.1f ms for %d mods", stage, wallTime * 1e-6, mods.size()));
+
+			for (ModRecord mod : mods.subList(0, Math.min(TOP_MODS, mods.size()))) {
+				sb.append(String.format("%n\t%s: %.1f ms (class loading %.1f ms, instantiation %.1f ms, invocation %.1f ms)",
+						mod.id, mod.getTotalTime() * 1e-6, mod.classLoadTime * 1e-6, mod.instantiationTime * 1e-6, mod.invocationTime * 1e-6));
+			}
+
+			Log.log(level, LogCategory.ENTRYPOINT, sb.toString());
+		}
+
+		if (REPORT) writeReport();
+	}
+
+	private static List<ModRecord> getSortedMods(StageRecord stage) {
+		List<ModRecord> ret = new ArrayList<>(stage.mods.values());
+		ret.sort(Comparator.comparingLong(ModRecord::getTotalTime).reversed());
+
+		return ret;
+	}
+
+	/**
+	 * Writes all stages recorded so far to {@code .fabric/entrypointProfile.json} in the game directory.
+	 */
+	private void writeReport() {
+		Path file = FabricLoaderImpl.INSTANCE.getGameDir().resolve(FabricLoaderImpl.CACHE_DIR_NAME).resolve(REPORT_FILE_NAME);
+
+		try {
+			Files.createDirectories(file.getParent());
+
+			try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+				PrintWriter pw = new PrintWriter(writer);
+
+				synchronized (this) {
+					writeReport(pw);
+				}
+
+				pw.flush();
+			}
+		} catch (IOException e) {
+			Log.warn(LogCategory.ENTRYPOINT, "Can't write entrypoint profile to %s", file, e);
+		}
+	}
+
+	private void writeReport(PrintWriter writer) {
+		writer.println("{");
+		writer.println("\t\"stages\": [");
+		boolean firstStage = true;
+
+		for (StageRecord stage : stages.values()) {
+			if (!firstStage) writer.println(",");
+			firstStage = false;
+
+			writer.println("\t\t{");
+			writer.printf(Locale.ROOT, "\t\t\t\"name\": \"%s\",%n", escape(stage.name));
+			writer.printf(Locale.ROOT, "\t\t\t\"wallTimeMs\": %.3f,%n", stage.wallTime * 1e-6);
+			writer.println("\t\t\t\"mods\": [");
+			boolean firstMod = true;
+
+			for (ModRecord mod : getSortedMods(stage)) {
+				if (!firstMod) writer.println(",");
+				firstMod = false;
+
+				writer.printf(Locale.ROOT, "\t\t\t\t{ \"id\": \"%s\", \"entrypoints\": %d, \"totalMs\": %.3f, \"classLoadingMs\": %.3f, \"instantiationMs\": %.3f, \"invocationMs\": %.3f }",
+						escape(mod.id), mod.entrypoints, mod.getTotalTime() * 1e-6, mod.classLoadTime * 1e-6, mod.instantiationTime * 1e-6, mod.invocationTime * 1e-6);
+			}
+
+			writer.println();
+			writer.println("\t\t\t]");
+			writer.print("\t\t}");
+		}
+
+		writer.println();
+		writer.println("\t]");
+		writer.println("}");
+	}
+
+	private static String escape(String s) {
+		StringBuilder sb = new StringBuilder(s.length());
+
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+
+			if (c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			} else if (c < 0x20) {
+				sb.append(String.format("\\u%04x", (int) c));
+			} else {
+				sb.append(c);
+			}
+		}
+
+		return sb.toString();
+	}
+
+	private static final class StageRecord {
+		final String name;
+		final Map<String, ModRecord> mods = new LinkedHashMap<>();
+		long wallTime;
+
+		StageRecord(String name) {
+			this.name = name;
+		}
+	}
+
+	private static final class ModRecord {
+		final String id;
+		int entrypoints;
+		long classLoadTime;
+		long instantiationTime;
+		long invocationTime;
+
+		ModRecord(String id) {
+			this.id = id;
+		}
+
+		long getTotalTime() {
+			return classLoadTime + instantiationTime + invocationTime;
+		}
+	}
+}
@@ -22,6 +22,7 @@ import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import net.fabricmc.loader.api.EntrypointException;
 import net.fabricmc.loader.api.LanguageAdapter;
@@ -135,12 +136,18 @@ public final class EntrypointStorage {
 	}
 
 	private final Map<String, List<Entry>> entryMap = new HashMap<>();
+	// key -> type -> immutable result list, only populated once frozen
+	private final Map<String, Map<Class<?>, List<?>>> entrypointCache = new ConcurrentHashMap<>();
+	private final Map<String, Map<Class<?>, List<?>>> containerCache = new ConcurrentHashMap<>();
+	private volatile boolean frozen;
 
 	private List<Entry> getOrCreateEntries(String key) {
 		return entryMap.computeIfAbsent(key, (z) -> new ArrayList<>());
 	}
 
 	public void addDeprecated(ModContainerImpl modContainer, String adapter, String value) throws ClassNotFoundException, LanguageAdapterException {
+		if (frozen) throw new IllegalStateException("Frozen - cannot add entrypoints!");
+
 		Log.debug(LogCategory.ENTRYPOINT, "Registering 0.3.x old-style initializer %s for mod %s", value, modContainer.getInfo().getId());
 		OldEntry oe = new OldEntry(modContainer, adapter, value);
 		getOrCreateEntries("main").add(oe);
@@ -149,6 +156,8 @@ public final class EntrypointStorage {
 	}
 
 	public void add(ModContainerImpl modContainer, String key, EntrypointMetadata metadata, Map<String, LanguageAdapter> adapterMap) throws Exception {
+		if (frozen) throw new IllegalStateException("Frozen - cannot add entrypoints!");
+
 		if (!adapterMap.containsKey(metadata.getAdapter())) {
 			throw new Exception("Could not find adapter '" + metadata.getAdapter() + "' (mod " + modContainer.getInfo().getId() + "!)");
 		}
@@ -159,12 +168,23 @@ public final class EntrypointStorage {
 				));
 	}
 
+	/**
+	 * Prevents adding further entrypoints, which allows memoizing the results of {@link #getEntrypoints} and
+	 * {@link #getEntrypointContainers}.
+	 */
+	public void freeze() {
+		frozen = true;
+	}
+
 	public boolean hasEntrypoints(String key) {
 		return entryMap.containsKey(key);
 	}
 
 	@SuppressWarnings("deprecation")
 	public <T> List<T> getEntrypoints(String key, Class<T> type) {
+		List<T> cached = getCached(entrypointCache, key, type);
+		if (cached != null) return new ArrayList<>(cached); // mods may modify the returned list
+
 		List<Entry> entries = entryMap.get(key);
 		if (entries == null) return Collections.emptyList();
 
@@ -191,11 +211,14 @@ public final class EntrypointStorage {
 			throw exception;
 		}
 
-		return results;
+		return cache(entrypointCache, key, type, results);
 	}
 
 	@SuppressWarnings("deprecation")
 	public <T> List<EntrypointContainer<T>> getEntrypointContainers(String key, Class<T> type) {
+		List<EntrypointContainer<T>> cached = getCached(containerCache, key, type);
+		if (cached != null) return new ArrayList<>(cached); // mods may modify the returned list
+
 		List<Entry> entries = entryMap.get(key);
 		if (entries == null) return Collections.emptyList();
 
@@ -229,6 +252,26 @@ public final class EntrypointStorage {
 
 		if (exc != null) throw exc;
 
+		return cache(containerCache, key, type, results);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> List<T> getCached(Map<String, Map<Class<?>, List<?>>> cache, String key, Class<?> type) {
+		Map<Class<?>, List<?>> typeCache = cache.get(key);
+
+		return typeCache != null ? (List<T>) typeCache.get(type) : null;
+	}
+
+	/**
+	 * Stores a complete result list, which stays valid once frozen since each entry returns the same instance per type.
+	 *
+	 * @return a list owned by the caller, the memoized one is never handed out
+	 */
+	private <T> List<T> cache(Map<String, Map<Class<?>, List<?>>> cache, String key, Class<?> type, List<T> results) {
+		if (frozen) {
+			cache.computeIfAbsent(key, ignore -> new ConcurrentHashMap<>()).putIfAbsent(type, new ArrayList<>(results));
+		}
+
 		return results;
 	}
 
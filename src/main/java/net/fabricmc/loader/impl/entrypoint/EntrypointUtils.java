@@ -16,16 +16,23 @@
 
 package net.fabricmc.loader.impl.entrypoint;
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.function.Consumer;
 
 import net.fabricmc.loader.api.entrypoint.EntrypointContainer;
 import net.fabricmc.loader.impl.FabricLoaderImpl;
 import net.fabricmc.loader.impl.util.ExceptionUtil;
+import net.fabricmc.loader.impl.util.SystemProperties;
 import net.fabricmc.loader.impl.util.log.Log;
 import net.fabricmc.loader.impl.util.log.LogCategory;
 
 public final class EntrypointUtils {
+	private static final boolean PARALLEL = Boolean.getBoolean(SystemProperties.ENTRYPOINT_PARALLEL);
+	private static final Set<String> PARALLEL_STAGES = new HashSet<>(Arrays.asList("main", "client", "server"));
+
 	public static <T> void invoke(String name, Class<T> type, Consumer<? super T> invoker) {
 		FabricLoaderImpl loader = FabricLoaderImpl.INSTANCE;
 
@@ -42,16 +49,26 @@ public final class EntrypointUtils {
 
 		Log.debug(LogCategory.ENTRYPOINT, "Iterating over entrypoint '%s'", name);
 
-		for (EntrypointContainer<T> container : entrypoints) {
-			try {
-				invoker.accept(container.getEntrypoint());
-			} catch (Throwable t) {
-				exception = ExceptionUtil.gatherExceptions(t,
-						exception,
-						exc -> new RuntimeException(String.format("Could not execute entrypoint stage '%s' due to errors, provided by '%s'!",
-								name, container.getProvider().getMetadata().getId()),
-								exc));
+		long startTime = System.nanoTime();
+
+		try {
+			if (PARALLEL && PARALLEL_STAGES.contains(name) && ParallelEntrypointInvoker.invoke(name, entrypoints, invoker)) {
+				return;
+			}
+
+			for (EntrypointContainer<T> container : entrypoints) {
+				try {
+					EntrypointProfiler.invoke(name, container, invoker);
+				} catch (Throwable t) {
+					exception = ExceptionUtil.gatherExceptions(t,
+							exception,
+							exc -> new RuntimeException(String.format("Could not execute entrypoint stage '%s' due to errors, provided by '%s'!",
+									name, container.getProvider().getMetadata().getId()),
+									exc));
+				}
 			}
+		} finally {
+			EntrypointProfiler.endStage(name, System.nanoTime() - startTime);
 		}
 
 		if (exception != null) {
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.impl.entrypoint;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import net.fabricmc.loader.impl.util.ExceptionUtil;
+import net.fabricmc.loader.impl.util.log.Log;
+import net.fabricmc.loader.impl.util.log.LogCategory;
+
+/**
+ * Runs the init tasks submitted through {@link net.fabricmc.loader.api.FabricLoader#submitInitTask}.
+ *
+ * <p>Tasks are identified as {@code modid:name}. Dependencies on tasks that weren't submitted yet are resolved once
+ * they are, dependencies on a whole mod once all its tasks finished after the barrier closed submissions. Cycles are
+ * rejected on submission, which guarantees that all tasks eventually run.</p>
+ *
+ * <p>The task pool is created on the first submission and shut down by {@link #awaitAll} once the last task finished.
+ * Only init tasks run on it and they never wait for anything but their dependencies, which are scheduled instead of
+ * blocked on. Entrypoints run by {@link ParallelEntrypointInvoker} use a separate pool, so they may wait for init
+ * tasks without being able to occupy the threads those need.</p>
+ */
+public final class ModInitExecutor {
+	private final Predicate<String> modLoadedCheck;
+	private final Map<String, Task> tasks = new LinkedHashMap<>(); // by id, including not yet submitted dependencies
+	private final Map<String, List<Task>> modTasks = new HashMap<>();
+	private final Map<String, CompletableFuture<Void>> modFutures = new HashMap<>();
+	private ExecutorService executor;
+	private boolean closed;
+
+	/**
+	 * @param modLoadedCheck tells whether a mod id is present, tasks may only be submitted for and depend on those
+	 */
+	public ModInitExecutor(Predicate<String> modLoadedCheck) {
+		this.modLoadedCheck = modLoadedCheck;
+	}
+
+	public synchronized CompletableFuture<Void> submit(String modId, String name, Collection<String> dependencies, Runnable runnable) {
+		Objects.requireNonNull(modId, "null modId");
+		Objects.requireNonNull(name, "null name");
+		Objects.requireNonNull(dependencies, "null dependencies");
+		Objects.requireNonNull(runnable, "null runnable");
+
+		if (closed) throw new IllegalStateException("Init tasks can only be submitted before mod initialization finished");
+		if (!modLoadedCheck.test(modId)) throw new IllegalArgumentException("Unknown mod: " + modId);
+		if (name.isEmpty() || name.indexOf(':') >= 0) throw new IllegalArgumentException("Invalid task name: " + name);
+
+		String id = modId + ":" + name;
+		Task existing = tasks.get(id);
+		if (existing != null && existing.dependencies != null) throw new IllegalArgumentException("Duplicate init task: " + id);
+
+		List<String> deps = new ArrayList<>();
+
+		for (String dep : dependencies) {
+			int pos = dep.indexOf(':');
+			String depModId = pos >= 0 ? dep.substring(0, pos) : dep;
+
+			// dependencies on absent mods are optional integrations and get ignored
+			if (modLoadedCheck.test(depModId)) deps.add(dep);
+		}
+
+		checkCycles(id, modId, deps);
+
+		List<CompletableFuture<Void>> depFutures = new ArrayList<>(deps.size());
+
+		for (String dep : deps) {
+			if (dep.indexOf(':') >= 0) {
+				depFutures.add(tasks.computeIfAbsent(dep, Task::new).future);
+			} else {
+				depFutures.add(modFutures.computeIfAbsent(dep, ignore -> new CompletableFuture<>()));
+			}
+		}
+
+		Task task = tasks.computeIfAbsent(id, Task::new);
+		task.dependencies = deps;
+		modTasks.computeIfAbsent(modId, ignore -> new ArrayList<>()).add(task);
+
+		Runnable wrapped = () -> {
+			try {
+				runnable.run();
+			} catch (Throwable t) {
+				task.error = t;
+				throw t;
+			}
+		};
+
+		CompletableFuture.allOf(depFutures.toArray(new CompletableFuture<?>[0]))
+				.thenRunAsync(wrapped, getExecutor())
+				.whenComplete((ignore, exc) -> complete(task.future, exc));
+
+		Log.debug(LogCategory.ENTRYPOINT, "Submitted init task %s with dependencies %s", id, deps);
+
+		// don't expose the internal future, completing it would break dependent tasks
+		return task.future.thenApply(ignore -> null);
+	}
+
+	/**
+	 * Stops accepting new tasks and waits for all submitted ones, this is the barrier before the game starts.
+	 *
+	 * @throws RuntimeException if any task failed or depended on a task that was never submitted
+	 */
+	public void awaitAll() {
+		List<Task> allTasks;
+
+		synchronized (this) {
+			if (closed) return;
+
+			closed = true;
+
+			for (Map.Entry<String, CompletableFuture<Void>> entry : modFutures.entrySet()) {
+				List<Task> list = modTasks.getOrDefault(entry.getKey(), Collections.emptyList());
+				CompletableFuture<?>[] futures = new CompletableFuture<?>[list.size()];
+
+				for (int i = 0; i < futures.length; i++) {
+					futures[i] = list.get(i).future;
+				}
+
+				CompletableFuture<Void> modFuture = entry.getValue();
+				CompletableFuture.allOf(futures).whenComplete((ignore, exc) -> complete(modFuture, exc));
+			}
+
+			for (Task task : tasks.values()) {
+				if (task.dependencies == null) {
+					task.error = new IllegalStateException("Init task " + task.id + " is a dependency, but was never submitted");
+					task.future.completeExceptionally(task.error);
+				}
+			}
+
+			allTasks = new ArrayList<>(tasks.values());
+		}
+
+		long startTime = System.nanoTime();
+		RuntimeException exception = null;
+
+		try {
+			for (Task task : allTasks) {
+				task.future.handle((ignore, exc) -> null).join();
+			}
+		} finally {
+			synchronized (this) {
+				if (executor != null) {
+					executor.shutdown();
+					executor = null;
+				}
+			}
+		}
+
+		if (!allTasks.isEmpty()) {
+			Log.debug(LogCategory.ENTRYPOINT, "Waited %.1f ms for %d init tasks", (System.nanoTime() - startTime) * 1e-6, allTasks.size());
+		}
+
+		// only report the tasks that failed themselves, not their dependents
+		for (Task task : allTasks) {
+			if (task.error == null) continue;
+
+			exception = ExceptionUtil.gatherExceptions(task.error,
+					exception,
+					exc -> new RuntimeException(String.format("Could not execute init task '%s' due to errors!", task.id), exc));
+		}
+
+		if (exception != null) {
+			throw exception;
+		}
+	}
+
+	private synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			executor = createPool("Mod Init Worker");
+		}
+
+		return executor;
+	}
+
+	/**
+	 * Creates a pool of daemon threads, sized to leave one core for the main thread.
+	 */
+	static ExecutorService createPool(String threadName) {
+		int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+		ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+		AtomicInteger threadCounter = new AtomicInteger();
+
+		return Executors.newFixedThreadPool(threads, r -> {
+			Thread ret = new Thread(r, threadName + " #" + threadCounter.incrementAndGet());
+			ret.setDaemon(true);
+			ret.setContextClassLoader(contextClassLoader);
+			return ret;
+		});
+	}
+
+	/**
+	 * Rejects dependencies that could reach the new task, either directly or through its mod.
+	 */
+	private void checkCycles(String id, String modId, List<String> deps) {
+		Queue<String> queue = new ArrayDeque<>(deps);
+		Set<String> visited = new HashSet<>();
+		String dep;
+
+		while ((dep = queue.poll()) != null) {
+			if (dep.equals(id) || dep.equals(modId)) {
+				throw new IllegalArgumentException("Init task " + id + " depends on itself through " + deps);
+			}
+
+			if (!visited.add(dep)) continue;
+
+			if (dep.indexOf(':') >= 0) {
+				Task task = tasks.get(dep);
+				if (task != null && task.dependencies != null) queue.addAll(task.dependencies);
+			} else {
+				for (Task task : modTasks.getOrDefault(dep, Collections.emptyList())) {
+					queue.add(task.id);
+				}
+			}
+		}
+	}
+
+	private static void complete(CompletableFuture<Void> future, Throwable exc) {
+		if (exc == null) {
+			future.complete(null);
+		} else {
+			future.completeExceptionally(exc);
+		}
+	}
+
+	private static final class Task {
+		final String id;
+		final CompletableFuture<Void> future = new CompletableFuture<>();
+		List<String> dependencies; // null until submitted
+		volatile Throwable error;
+
+		Task(String id) {
+			this.id = id;
+		}
+	}
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.impl.entrypoint;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+
+import net.fabricmc.loader.api.ModContainer;
+import net.fabricmc.loader.api.entrypoint.EntrypointContainer;
+import net.fabricmc.loader.api.metadata.CustomValue;
+import net.fabricmc.loader.api.metadata.ModDependency;
+import net.fabricmc.loader.api.metadata.ModMetadata;
+import net.fabricmc.loader.impl.util.ExceptionUtil;
+import net.fabricmc.loader.impl.util.log.Log;
+import net.fabricmc.loader.impl.util.log.LogCategory;
+
+/**
+ * Runs the entrypoints of an entrypoint stage on a worker pool, one task per mod.
+ *
+ * <p>Only mods declaring the custom value {@value #PARALLEL_INIT_KEY} as {@code true} run on the workers, all others
+ * stay on the calling thread in their usual order. A mod only starts once the mods it declares a positive dependency
+ * on finished, if those come earlier in the regular order. Later mods are ignored as dependencies, which keeps the
+ * graph acyclic and never gives a mod weaker guarantees than sequential execution.</p>
+ *
+ * <p>Each stage gets its own pool, shut down once the stage finished. It's separate from the init task pool, so
+ * entrypoints may wait for init tasks.</p>
+ */
+final class ParallelEntrypointInvoker {
+	static final String PARALLEL_INIT_KEY = "fabric-loader:parallel_init";
+
+	private ParallelEntrypointInvoker() { }
+
+	/**
+	 * @return false if no mod opted in, leaving the entrypoints for the regular sequential execution
+	 */
+	static <T> boolean invoke(String name, Collection<EntrypointContainer<T>> entrypoints, Consumer<? super T> invoker) {
+		Map<ModContainer, List<EntrypointContainer<T>>> byMod = new LinkedHashMap<>();
+
+		for (EntrypointContainer<T> container : entrypoints) {
+			byMod.computeIfAbsent(container.getProvider(), ignore -> new ArrayList<>()).add(container);
+		}
+
+		List<ModContainer> mods = new ArrayList<>(byMod.keySet());
+		Map<String, Integer> modIndices = new HashMap<>();
+		int parallelCount = 0;
+
+		for (int i = 0; i < mods.size(); i++) {
+			modIndices.put(mods.get(i).getMetadata().getId(), i);
+			if (isParallelSafe(mods.get(i).getMetadata())) parallelCount++;
+		}
+
+		if (parallelCount == 0) return false;
+
+		Log.debug(LogCategory.ENTRYPOINT, "Running entrypoint '%s' for %d of %d mods in parallel", name, parallelCount, mods.size());
+
+		List<CompletableFuture<Void>> futures = new ArrayList<>(mods.size());
+		List<List<Throwable>> errors = new ArrayList<>(mods.size());
+		List<Integer> mainThreadMods = new ArrayList<>();
+		ExecutorService executor = ModInitExecutor.createPool("Entrypoint Worker");
+
+		try {
+			for (int i = 0; i < mods.size(); i++) {
+				ModContainer mod = mods.get(i);
+				List<EntrypointContainer<T>> containers = byMod.get(mod);
+				List<Throwable> modErrors = new ArrayList<>();
+				errors.add(modErrors);
+
+				if (isParallelSafe(mod.getMetadata())) {
+					futures.add(getDependencies(mod, i, modIndices, futures)
+							.handle((ignore, exc) -> null) // run even if a dependency failed, like in sequential mode
+							.thenRunAsync(() -> run(name, containers, invoker, modErrors), executor));
+				} else {
+					futures.add(new CompletableFuture<>());
+					mainThreadMods.add(i);
+				}
+			}
+
+			for (int i : mainThreadMods) {
+				getDependencies(mods.get(i), i, modIndices, futures).handle((ignore, exc) -> null).join();
+				run(name, byMod.get(mods.get(i)), invoker, errors.get(i));
+				futures.get(i).complete(null);
+			}
+
+			CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+		} finally {
+			executor.shutdown();
+		}
+
+		// report in regular mod order regardless of which thread finished first
+		RuntimeException exception = null;
+
+		for (int i = 0; i < mods.size(); i++) {
+			String modId = mods.get(i).getMetadata().getId();
+
+			for (Throwable t : errors.get(i)) {
+				exception = ExceptionUtil.gatherExceptions(t,
+						exception,
+						exc -> new RuntimeException(String.format("Could not execute entrypoint stage '%s' due to errors, provided by '%s'!",
+								name, modId),
+								exc));
+			}
+		}
+
+		if (exception != null) {
+			throw exception;
+		}
+
+		return true;
+	}
+
+	private static <T> void run(String name, List<EntrypointContainer<T>> containers, Consumer<? super T> invoker, List<Throwable> errors) {
+		for (EntrypointContainer<T> container : containers) {
+			try {
+				EntrypointProfiler.invoke(name, container, invoker);
+			} catch (Throwable t) {
+				errors.add(t);
+			}
+		}
+	}
+
+	private static CompletableFuture<Void> getDependencies(ModContainer mod, int index, Map<String, Integer> modIndices, List<CompletableFuture<Void>> futures) {
+		List<CompletableFuture<Void>> ret = new ArrayList<>();
+
+		for (ModDependency dep : mod.getMetadata().getDependencies()) {
+			if (!dep.getKind().isPositive()) continue;
+
+			Integer depIndex = modIndices.get(dep.getModId());
+
+			if (depIndex != null && depIndex < index) {
+				ret.add(futures.get(depIndex));
+			}
+		}
+
+		return CompletableFuture.allOf(ret.toArray(new CompletableFuture<?>[0]));
+	}
+
+	private static boolean isParallelSafe(ModMetadata metadata) {
+		if (!metadata.containsCustomValue(PARALLEL_INIT_KEY)) return false;
+
+		CustomValue value = metadata.getCustomValue(PARALLEL_INIT_KEY);
+
+		return value.getType() == CustomValue.CvType.BOOLEAN && value.getAsBoolean();
+	}
+}
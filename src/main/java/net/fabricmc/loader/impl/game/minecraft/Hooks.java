@@ -51,6 +51,7 @@ public final class Hooks {
 		FabricLoaderImpl.INSTANCE.prepareModInit(runDir.toPath(), gameInstance);
 		EntrypointUtils.invoke("main", ModInitializer.class, ModInitializer::onInitialize);
 		EntrypointUtils.invoke("client", ClientModInitializer.class, ClientModInitializer::onInitializeClient);
+		FabricLoaderImpl.INSTANCE.finishModInit();
 	}
 
 	public static void startServer(File runDir, Object gameInstance) {
@@ -61,6 +62,7 @@ public final class Hooks {
 		FabricLoaderImpl.INSTANCE.prepareModInit(runDir.toPath(), gameInstance);
 		EntrypointUtils.invoke("main", ModInitializer.class, ModInitializer::onInitialize);
 		EntrypointUtils.invoke("server", DedicatedServerModInitializer.class, DedicatedServerModInitializer::onInitializeServer);
+		FabricLoaderImpl.INSTANCE.finishModInit();
 	}
 
 	public static void setGameInstance(Object gameInstance) {
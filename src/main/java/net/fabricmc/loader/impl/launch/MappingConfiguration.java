@@ -17,48 +17,215 @@
 package net.fabricmc.loader.impl.launch;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 
+import net.fabricmc.loader.impl.FabricLoaderImpl;
+import net.fabricmc.loader.impl.util.SystemProperties;
 import net.fabricmc.loader.impl.util.log.Log;
 import net.fabricmc.loader.impl.util.log.LogCategory;
+import net.fabricmc.loader.impl.util.mappings.BinaryTinyTree;
 import net.fabricmc.mapping.tree.TinyMappingFactory;
 import net.fabricmc.mapping.tree.TinyTree;
 
 public class MappingConfiguration {
+	private static final String MAPPINGS_CACHE_DIR_NAME = "mappings"; // relative to .fabric
+	private static final long STALE_CACHE_AGE = TimeUnit.DAYS.toMillis(7); // since last use
+
 	private static TinyTree mappings;
-	private static boolean checkedMappings;
+	private static volatile boolean checkedMappings;
+	private static Path cacheDir;
+	private static CompletableFuture<TinyTree> pendingMappings;
+
+	/**
+	 * Enables caching the mappings in a binary format in the game directory, needs to be called before the mappings
+	 * get loaded.
+	 */
+	public void setGameDir(Path gameDir) {
+		if (!Boolean.getBoolean(SystemProperties.DEBUG_DISABLE_BINARY_MAPPINGS)) {
+			cacheDir = gameDir.resolve(FabricLoaderImpl.CACHE_DIR_NAME).resolve(MAPPINGS_CACHE_DIR_NAME);
+		}
+	}
+
+	/**
+	 * Starts loading the mappings on a background thread, {@link #getMappings} will wait for the result instead of
+	 * loading them itself.
+	 */
+	public void loadAsync() {
+		synchronized (MappingConfiguration.class) {
+			if (checkedMappings || pendingMappings != null) return;
+
+			CompletableFuture<TinyTree> future = new CompletableFuture<>();
+			pendingMappings = future;
+
+			Thread thread = new Thread(() -> {
+				try {
+					future.complete(loadMappings());
+				} catch (Throwable t) {
+					future.completeExceptionally(t);
+				}
+			}, "Mappings loader");
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
 
 	public TinyTree getMappings() {
 		if (!checkedMappings) {
-			InputStream mappingStream = FabricLauncherBase.class.getClassLoader().getResourceAsStream("mappings/mappings.tiny");
-
-			if (mappingStream != null) {
-				try (BufferedReader reader = new BufferedReader(new InputStreamReader(mappingStream))) {
-					long time = System.currentTimeMillis();
-					mappings = TinyMappingFactory.loadWithDetection(reader);
-					Log.debug(LogCategory.MAPPINGS, "Loading mappings took %d ms", System.currentTimeMillis() - time);
-				} catch (IOException ee) {
-					ee.printStackTrace();
+			synchronized (MappingConfiguration.class) {
+				if (!checkedMappings) {
+					mappings = pendingMappings != null ? awaitMappings(pendingMappings) : loadMappings();
+					pendingMappings = null;
+					checkedMappings = true;
 				}
+			}
+		}
 
-				try {
-					mappingStream.close();
-				} catch (IOException ee) {
-					ee.printStackTrace();
-				}
+		return mappings;
+	}
+
+	private static TinyTree awaitMappings(CompletableFuture<TinyTree> future) {
+		long time = System.nanoTime();
+
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+			if (e.getCause() instanceof Error) throw (Error) e.getCause();
+			throw e;
+		} finally {
+			Log.debug(LogCategory.MAPPINGS, "Waited %.1f ms for background mappings loading", (System.nanoTime() - time) * 1e-6);
+		}
+	}
+
+	private static TinyTree loadMappings() {
+		TinyTree ret = null;
+		InputStream mappingStream = FabricLauncherBase.class.getClassLoader().getResourceAsStream("mappings/mappings.tiny");
+
+		if (mappingStream != null) {
+			try {
+				long time = System.currentTimeMillis();
+				ret = cacheDir != null ? loadCached(mappingStream) : parse(mappingStream);
+				Log.debug(LogCategory.MAPPINGS, "Loading mappings took %d ms", System.currentTimeMillis() - time);
+			} catch (IOException ee) {
+				ee.printStackTrace();
 			}
 
-			if (mappings == null) {
-				Log.info(LogCategory.MAPPINGS, "Mappings not present!");
-				mappings = TinyMappingFactory.EMPTY_TREE;
+			try {
+				mappingStream.close();
+			} catch (IOException ee) {
+				ee.printStackTrace();
 			}
+		}
 
-			checkedMappings = true;
+		if (ret == null) {
+			Log.info(LogCategory.MAPPINGS, "Mappings not present!");
+			ret = TinyMappingFactory.EMPTY_TREE;
 		}
 
-		return mappings;
+		return ret;
+	}
+
+	private static TinyTree parse(InputStream mappingStream) throws IOException {
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(mappingStream))) {
+			return TinyMappingFactory.loadWithDetection(reader);
+		}
+	}
+
+	/**
+	 * Opens the binary form of the mappings, converting the tiny file first if there's no binary file for its content
+	 * yet. Hashing the tiny file is much cheaper than parsing it.
+	 */
+	private static TinyTree loadCached(InputStream mappingStream) throws IOException {
+		byte[] data = readAll(mappingStream);
+		Path cacheFile;
+
+		try {
+			cacheFile = cacheDir.resolve(hash(data) + ".bin");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+
+		if (Files.exists(cacheFile)) {
+			try {
+				// mark it as in use for removeStale in other instances
+				Files.setLastModifiedTime(cacheFile, FileTime.fromMillis(System.currentTimeMillis()));
+
+				return BinaryTinyTree.open(cacheFile);
+			} catch (IOException e) {
+				Log.debug(LogCategory.MAPPINGS, "Can't open binary mappings %s, recreating", cacheFile, e);
+			}
+		}
+
+		TinyTree ret = parse(new ByteArrayInputStream(data));
+
+		try {
+			BinaryTinyTree.write(ret, cacheFile);
+			removeStale(cacheFile);
+
+			return BinaryTinyTree.open(cacheFile);
+		} catch (IOException e) {
+			Log.warn(LogCategory.MAPPINGS, "Can't write binary mappings %s", cacheFile, e);
+
+			return ret;
+		}
+	}
+
+	private static byte[] readAll(InputStream is) throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream(Math.max(is.available(), 8192));
+		byte[] buffer = new byte[8192];
+		int len;
+
+		while ((len = is.read(buffer)) > 0) {
+			os.write(buffer, 0, len);
+		}
+
+		return os.toByteArray();
+	}
+
+	private static String hash(byte[] data) throws NoSuchAlgorithmException {
+		byte[] hash = MessageDigest.getInstance("SHA-256").digest(data);
+		StringBuilder sb = new StringBuilder();
+
+		for (int i = 0; i < 16; i++) {
+			sb.append(Character.forDigit((hash[i] >> 4) & 0xf, 16));
+			sb.append(Character.forDigit(hash[i] & 0xf, 16));
+		}
+
+		return sb.toString();
+	}
+
+	/**
+	 * Removes binary mappings that weren't used for a while, newer ones may still be mapped by another game instance.
+	 */
+	private static void removeStale(Path current) {
+		long minTime = System.currentTimeMillis() - STALE_CACHE_AGE;
+
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(current.getParent(), "*.bin")) {
+			for (Path path : stream) {
+				if (path.equals(current)) continue;
+
+				try {
+					if (Files.getLastModifiedTime(path).toMillis() < minTime) Files.deleteIfExists(path);
+				} catch (IOException e) {
+					Log.debug(LogCategory.MAPPINGS, "Can't remove outdated binary mappings %s", path, e);
+				}
+			}
+		} catch (IOException e) {
+			Log.debug(LogCategory.MAPPINGS, "Can't remove outdated binary mappings", e);
+		}
 	}
 
 	public String getTargetNamespace() {
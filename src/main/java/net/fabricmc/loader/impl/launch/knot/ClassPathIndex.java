@@ -0,0 +1,601 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.impl.launch.knot;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+import net.fabricmc.loader.impl.util.UrlUtil;
+import net.fabricmc.loader.impl.util.log.Log;
+import net.fabricmc.loader.impl.util.log.LogCategory;
+
+/**
+ * Class path for {@link KnotClassLoader}, replacing the linear search of a {@link URLClassLoader}.
+ *
+ * <p>Archives are indexed by the packages (directories) they contain when they get added, so lookups only probe the
+ * archives owning the requested package and misses are answered without touching any archive. Directories and
+ * multi-release jars aren't indexed and are always probed, in class path order.</p>
+ *
+ * <p>Archives also answer lookups for every directory below which they have entries, with or without a trailing
+ * slash, even if they don't store an entry for the directory itself.</p>
+ */
+final class ClassPathIndex {
+	private static final String MULTI_RELEASE = "Multi-Release";
+	private static final String VERSIONS_PREFIX = "META-INF/versions/";
+	private static final Entry[] NO_ENTRIES = new Entry[0];
+
+	private final Map<String, Entry[]> packageIndex = new ConcurrentHashMap<>();
+	private final Map<String, Entry[]> directoryIndex = new ConcurrentHashMap<>();
+	private volatile Entry[] unindexed = NO_ENTRIES;
+	private volatile int mutableEntries;
+	private int entryCount;
+
+	/**
+	 * Adds an entry to the end of the class path.
+	 *
+	 * @return the code source metadata for the entry
+	 */
+	synchronized KnotClassDelegate.Metadata add(URL url) {
+		Entry entry;
+
+		try {
+			entry = createEntry(url, entryCount);
+		} catch (IOException | URISyntaxException e) {
+			throw new RuntimeException("Failed to add " + url + " to the class path", e);
+		}
+
+		entryCount++;
+		if (entry.mutable) mutableEntries++;
+
+		if (entry.getPackages() == null) {
+			Entry[] prev = unindexed;
+			Entry[] next = Arrays.copyOf(prev, prev.length + 1);
+			next[prev.length] = entry;
+			unindexed = next;
+		} else {
+			for (String pkg : entry.getPackages()) {
+				packageIndex.merge(pkg, new Entry[] { entry }, ClassPathIndex::concat);
+			}
+
+			for (String dir : entry.getDirectories()) {
+				directoryIndex.merge(dir, new Entry[] { entry }, ClassPathIndex::concat);
+			}
+		}
+
+		return entry.metadata;
+	}
+
+	/**
+	 * Replaces an entry with another URL at the same class path position, e.g. to swap in a modified copy of a jar.
+	 *
+	 * <p>This has to happen before anything got loaded from the entry.</p>
+	 *
+	 * @return the code source metadata for the new entry
+	 */
+	synchronized KnotClassDelegate.Metadata replace(URL url, URL replacement) {
+		Entry old = findEntry(url);
+		if (old == null) throw new IllegalArgumentException(url + " is not on the class path");
+
+		Entry entry;
+
+		try {
+			entry = createEntry(replacement, old.order);
+		} catch (IOException | URISyntaxException e) {
+			throw new RuntimeException("Failed to add " + replacement + " to the class path", e);
+		}
+
+		// add the new entry before removing the old one so concurrent lookups always see one of them
+		if (entry.getPackages() == null) {
+			unindexed = insert(unindexed, entry);
+		} else {
+			for (String pkg : entry.getPackages()) {
+				packageIndex.merge(pkg, new Entry[] { entry }, (prev, ignore) -> insert(prev, entry));
+			}
+
+			for (String dir : entry.getDirectories()) {
+				directoryIndex.merge(dir, new Entry[] { entry }, (prev, ignore) -> insert(prev, entry));
+			}
+		}
+
+		unindexed = remove(unindexed, old);
+		remove(packageIndex, old);
+		remove(directoryIndex, old);
+		old.close();
+
+		if (entry.mutable != old.mutable) mutableEntries += entry.mutable ? 1 : -1;
+
+		return entry.metadata;
+	}
+
+	/**
+	 * Checks whether the class path contents may change without entries getting added or replaced. That's the case for
+	 * directories, which can gain files at any time, and anything else that isn't a local archive.
+	 */
+	boolean isMutable() {
+		return mutableEntries > 0;
+	}
+
+	URL getResource(String name) {
+		Entry entry = find(name);
+
+		return entry != null ? entry.getResource(name) : null;
+	}
+
+	InputStream getResourceAsStream(String name) throws IOException {
+		Entry entry = find(name);
+
+		return entry != null ? entry.getInputStream(name) : null;
+	}
+
+	/**
+	 * Locates a class file, probing each candidate entry only once.
+	 */
+	KnotClassDelegate.ClassFile findClassFile(String name) {
+		Entry[] indexed = packageIndex.get(getPackage(name)); // class files are never directories
+		Entry[] dirs = unindexed;
+
+		if (indexed == null) {
+			if (dirs.length == 0) return null;
+			indexed = NO_ENTRIES;
+		}
+
+		int i = 0;
+		int j = 0;
+
+		while (i < indexed.length || j < dirs.length) {
+			Entry entry = j >= dirs.length || i < indexed.length && indexed[i].order < dirs[j].order ? indexed[i++] : dirs[j++];
+			KnotClassDelegate.ClassFile ret = entry.findClassFile(name);
+			if (ret != null) return ret;
+		}
+
+		return null;
+	}
+
+	Enumeration<URL> getResources(String name) {
+		Entry[] indexed = getIndexed(name);
+		Entry[] dirs = unindexed;
+
+		if (indexed == null) {
+			if (dirs.length == 0) return Collections.emptyEnumeration();
+			indexed = NO_ENTRIES;
+		}
+
+		List<URL> ret = new ArrayList<>();
+		int i = 0;
+		int j = 0;
+
+		while (i < indexed.length || j < dirs.length) {
+			Entry entry = j >= dirs.length || i < indexed.length && indexed[i].order < dirs[j].order ? indexed[i++] : dirs[j++];
+			URL url = entry.getResource(name);
+			if (url != null) ret.add(url);
+		}
+
+		return Collections.enumeration(ret);
+	}
+
+	private Entry find(String name) {
+		Entry[] indexed = getIndexed(name);
+		Entry[] dirs = unindexed;
+
+		if (indexed == null) {
+			if (dirs.length == 0) return null; // negative result straight from the index
+			indexed = NO_ENTRIES;
+		}
+
+		int i = 0;
+		int j = 0;
+
+		// merge both sources in class path order
+		while (i < indexed.length || j < dirs.length) {
+			Entry entry = j >= dirs.length || i < indexed.length && indexed[i].order < dirs[j].order ? indexed[i++] : dirs[j++];
+			if (entry.contains(name)) return entry;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Gets the archives that may contain a name, either as a file or as a directory.
+	 */
+	private Entry[] getIndexed(String name) {
+		Entry[] ret = packageIndex.get(getPackage(name));
+		Entry[] dirs = directoryIndex.get(trimSlash(name));
+
+		if (dirs == null) return ret;
+		if (ret == null) return dirs;
+
+		return union(ret, dirs);
+	}
+
+	private Entry findEntry(URL url) {
+		String key = url.toString();
+
+		for (Entry entry : unindexed) {
+			if (entry.url.toString().equals(key)) return entry;
+		}
+
+		for (Entry[] entries : packageIndex.values()) {
+			for (Entry entry : entries) {
+				if (entry.url.toString().equals(key)) return entry;
+			}
+		}
+
+		return null;
+	}
+
+	private static String getPackage(String name) {
+		int pos = name.lastIndexOf('/');
+
+		return pos > 0 ? name.substring(0, pos) : "";
+	}
+
+	private static String trimSlash(String name) {
+		return name.endsWith("/") ? name.substring(0, name.length() - 1) : name;
+	}
+
+	private static Entry[] concat(Entry[] a, Entry[] b) {
+		Entry[] ret = Arrays.copyOf(a, a.length + b.length);
+		System.arraycopy(b, 0, ret, a.length, b.length);
+
+		return ret;
+	}
+
+	/**
+	 * Merges two arrays in class path order, dropping duplicates.
+	 */
+	private static Entry[] union(Entry[] a, Entry[] b) {
+		Entry[] ret = new Entry[a.length + b.length];
+		int i = 0;
+		int j = 0;
+		int len = 0;
+
+		while (i < a.length || j < b.length) {
+			Entry entry = j >= b.length || i < a.length && a[i].order <= b[j].order ? a[i++] : b[j++];
+			if (len == 0 || ret[len - 1] != entry) ret[len++] = entry;
+		}
+
+		return len == ret.length ? ret : Arrays.copyOf(ret, len);
+	}
+
+	/**
+	 * Inserts an entry while keeping the class path order.
+	 */
+	private static Entry[] insert(Entry[] entries, Entry entry) {
+		int pos = 0;
+		while (pos < entries.length && entries[pos].order <= entry.order) pos++;
+
+		Entry[] ret = new Entry[entries.length + 1];
+		System.arraycopy(entries, 0, ret, 0, pos);
+		ret[pos] = entry;
+		System.arraycopy(entries, pos, ret, pos + 1, entries.length - pos);
+
+		return ret;
+	}
+
+	private static Entry[] remove(Entry[] entries, Entry entry) {
+		for (int i = 0; i < entries.length; i++) {
+			if (entries[i] != entry) continue;
+
+			Entry[] ret = new Entry[entries.length - 1];
+			System.arraycopy(entries, 0, ret, 0, i);
+			System.arraycopy(entries, i + 1, ret, i, ret.length - i);
+
+			return ret;
+		}
+
+		return entries;
+	}
+
+	private static void remove(Map<String, Entry[]> index, Entry entry) {
+		for (Iterator<Map.Entry<String, Entry[]>> it = index.entrySet().iterator(); it.hasNext(); ) {
+			Map.Entry<String, Entry[]> e = it.next();
+			Entry[] next = remove(e.getValue(), entry);
+
+			if (next.length == 0) {
+				it.remove();
+			} else if (next != e.getValue()) {
+				e.setValue(next);
+			}
+		}
+	}
+
+	private static Entry createEntry(URL url, int order) throws IOException, URISyntaxException {
+		if (url.getProtocol().equals("file")) {
+			Path path = UrlUtil.asPath(url);
+
+			if (Files.isDirectory(path)) {
+				return new DirectoryEntry(url, order, path);
+			} else if (Files.isRegularFile(path)) {
+				JarFile jar = new JarFile(path.toFile());
+				Manifest manifest = jar.getManifest();
+
+				if (manifest == null || !Boolean.parseBoolean(manifest.getMainAttributes().getValue(MULTI_RELEASE))) {
+					return new ArchiveEntry(url, order, jar);
+				}
+
+				jar.close();
+				Log.debug(LogCategory.KNOT, "Not indexing multi-release archive %s", url);
+
+				return new UrlEntry(url, order, false);
+			}
+		}
+
+		Log.debug(LogCategory.KNOT, "Not indexing class path entry %s", url);
+
+		return new UrlEntry(url, order, true);
+	}
+
+	private abstract static class Entry {
+		final URL url;
+		final int order;
+		final boolean mutable;
+		final KnotClassDelegate.Metadata metadata;
+
+		Entry(URL url, int order, boolean mutable, JarFile jar) {
+			this.url = url;
+			this.order = order;
+			this.mutable = mutable;
+			this.metadata = new KnotClassDelegate.Metadata(url, jar);
+		}
+
+		/**
+		 * Gets all packages in this entry, or null if the entry can't be indexed.
+		 */
+		abstract Set<String> getPackages();
+
+		/**
+		 * Gets all directories in this entry including the ones only implied by the paths of its files, or null if the
+		 * entry can't be indexed.
+		 */
+		abstract Set<String> getDirectories();
+		abstract boolean contains(String name);
+		abstract URL getResource(String name);
+		abstract InputStream getInputStream(String name) throws IOException;
+		abstract KnotClassDelegate.ClassFile findClassFile(String name);
+
+		void close() { }
+
+		@Override
+		public String toString() {
+			return url.toString();
+		}
+	}
+
+	private static final class ArchiveEntry extends Entry {
+		private final JarFile jar;
+		private final String urlPrefix;
+		private final Set<String> packages = new HashSet<>();
+		private final Set<String> directories = new HashSet<>();
+
+		ArchiveEntry(URL url, int order, JarFile jar) {
+			super(url, order, false, jar);
+
+			this.jar = jar;
+			this.urlPrefix = "jar:" + url + "!/";
+
+			for (Enumeration<JarEntry> e = jar.entries(); e.hasMoreElements(); ) {
+				String name = e.nextElement().getName();
+				if (name.startsWith(VERSIONS_PREFIX)) continue;
+
+				String pkg = getPackage(name);
+				if (!packages.add(pkg)) continue;
+
+				// jars don't need entries for their directories, derive them from the package
+				while (!pkg.isEmpty() && directories.add(pkg)) {
+					pkg = getPackage(pkg);
+				}
+			}
+		}
+
+		@Override
+		Set<String> getPackages() {
+			return packages;
+		}
+
+		@Override
+		Set<String> getDirectories() {
+			return directories;
+		}
+
+		@Override
+		boolean contains(String name) {
+			return jar.getEntry(name) != null || directories.contains(trimSlash(name));
+		}
+
+		@Override
+		URL getResource(String name) {
+			if (!contains(name)) return null;
+
+			try {
+				return new URL(urlPrefix + name);
+			} catch (MalformedURLException e) {
+				return null;
+			}
+		}
+
+		@Override
+		InputStream getInputStream(String name) throws IOException {
+			JarEntry entry = jar.getJarEntry(name);
+
+			return entry != null ? jar.getInputStream(entry) : null;
+		}
+
+		@Override
+		KnotClassDelegate.ClassFile findClassFile(String name) {
+			JarEntry entry = jar.getJarEntry(name);
+			if (entry == null) return null;
+
+			return new KnotClassDelegate.ClassFile(metadata, (int) entry.getSize()) {
+				@Override
+				InputStream open() throws IOException {
+					return jar.getInputStream(entry);
+				}
+			};
+		}
+
+		@Override
+		void close() {
+			try {
+				jar.close();
+			} catch (IOException e) {
+				Log.debug(LogCategory.KNOT, "Can't close %s", url, e);
+			}
+		}
+	}
+
+	private static final class DirectoryEntry extends Entry {
+		private final Path path;
+
+		DirectoryEntry(URL url, int order, Path path) {
+			super(url, order, true, null);
+
+			this.path = path;
+		}
+
+		@Override
+		Set<String> getPackages() {
+			return null;
+		}
+
+		@Override
+		Set<String> getDirectories() {
+			return null;
+		}
+
+		@Override
+		boolean contains(String name) {
+			return Files.exists(path.resolve(name));
+		}
+
+		@Override
+		URL getResource(String name) {
+			Path file = path.resolve(name);
+			if (!Files.exists(file)) return null;
+
+			try {
+				return UrlUtil.asUrl(file);
+			} catch (MalformedURLException e) {
+				return null;
+			}
+		}
+
+		@Override
+		InputStream getInputStream(String name) throws IOException {
+			Path file = path.resolve(name);
+
+			return Files.isRegularFile(file) ? Files.newInputStream(file) : null;
+		}
+
+		@Override
+		KnotClassDelegate.ClassFile findClassFile(String name) {
+			Path file = path.resolve(name);
+			if (!Files.isRegularFile(file)) return null;
+
+			return new KnotClassDelegate.ClassFile(metadata, -1) {
+				@Override
+				InputStream open() throws IOException {
+					return Files.newInputStream(file);
+				}
+
+				@Override
+				byte[] readBytes() throws IOException {
+					return Files.readAllBytes(file);
+				}
+
+				@Override
+				ByteBuffer readBuffer() throws IOException {
+					// loose class files are stored uncompressed, define them straight from the page cache
+					try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+						return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+					}
+				}
+			};
+		}
+	}
+
+	/**
+	 * Fallback for anything else, delegates to a single-entry URLClassLoader to get its full lookup semantics.
+	 */
+	private static final class UrlEntry extends Entry {
+		private final URLClassLoader loader;
+
+		/**
+		 * @param mutable whether the entry may change its contents, false for local archives
+		 */
+		UrlEntry(URL url, int order, boolean mutable) {
+			super(url, order, mutable, null);
+
+			this.loader = new URLClassLoader(new URL[] { url }, new DummyClassLoader());
+		}
+
+		@Override
+		Set<String> getPackages() {
+			return null;
+		}
+
+		@Override
+		Set<String> getDirectories() {
+			return null;
+		}
+
+		@Override
+		boolean contains(String name) {
+			return loader.findResource(name) != null;
+		}
+
+		@Override
+		URL getResource(String name) {
+			return loader.findResource(name);
+		}
+
+		@Override
+		InputStream getInputStream(String name) throws IOException {
+			URL url = loader.findResource(name);
+
+			return url != null ? url.openStream() : null;
+		}
+
+		@Override
+		KnotClassDelegate.ClassFile findClassFile(String name) {
+			URL url = loader.findResource(name);
+
+			return url != null ? KnotClassDelegate.ClassFile.of(url, metadata) : null;
+		}
+	}
+}
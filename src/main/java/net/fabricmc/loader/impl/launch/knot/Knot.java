@@ -32,6 +32,8 @@ import java.util.Objects;
 import java.util.stream.Collectors;
 
 import org.spongepowered.asm.launch.MixinBootstrap;
+import org.spongepowered.asm.service.IMixinService;
+import org.spongepowered.asm.service.MixinService;
 
 import net.fabricmc.api.EnvType;
 import net.fabricmc.loader.api.entrypoint.PreLaunchEntrypoint;
@@ -41,6 +43,7 @@ import net.fabricmc.loader.impl.game.GameProvider;
 import net.fabricmc.loader.impl.game.GameProviders;
 import net.fabricmc.loader.impl.launch.FabricLauncherBase;
 import net.fabricmc.loader.impl.launch.FabricMixinBootstrap;
+import net.fabricmc.loader.impl.transformer.AccessWidenerBaker;
 import net.fabricmc.loader.impl.util.SystemProperties;
 import net.fabricmc.loader.impl.util.UrlUtil;
 import net.fabricmc.loader.impl.util.log.Log;
@@ -117,6 +120,10 @@ public final class Knot extends FabricLauncherBase {
 			throw new RuntimeException("Could not find valid game provider!");
 		}
 
+		// the mappings are independent of everything up to remapping the game or mods, load them in the meantime
+		getMappingConfiguration().setGameDir(provider.getLaunchDirectory());
+		getMappingConfiguration().loadAsync();
+
 		isDevelopment = Boolean.parseBoolean(System.getProperty(SystemProperties.DEVELOPMENT, "false"));
 
 		// Setup classloader
@@ -147,6 +154,12 @@ public final class Knot extends FabricLauncherBase {
 
 		FabricLoaderImpl.INSTANCE.loadAccessWideners();
 
+		if (classLoader instanceof KnotClassLoader
+				&& FabricLauncherBase.minecraftJar != null
+				&& Boolean.getBoolean(SystemProperties.BAKE_ACCESS_WIDENERS)) {
+			bakeAccessWideners((KnotClassLoader) classLoader, loader);
+		}
+
 		MixinBootstrap.init();
 		FabricMixinBootstrap.init(getEnvironmentType(), loader);
 		FabricLauncherBase.finishMixinBootstrapping();
@@ -154,10 +167,49 @@ public final class Knot extends FabricLauncherBase {
 		classLoader.getDelegate().initializeTransformers();
 
 		EntrypointUtils.invoke("preLaunch", PreLaunchEntrypoint.class, PreLaunchEntrypoint::onPreLaunch);
+		classLoader.getDelegate().onPreLaunchFinished();
 
 		return cl;
 	}
 
+	/**
+	 * Swaps the game jar for a copy with the access wideners already applied, they aren't known before the mods got
+	 * discovered, so this can't happen while deobfuscating.
+	 */
+	private static void bakeAccessWideners(KnotClassLoader classLoader, FabricLoaderImpl loader) {
+		Path gameJar = FabricLauncherBase.minecraftJar;
+		Path bakedJar = AccessWidenerBaker.bake(loader, gameJar);
+		if (bakedJar == null) return;
+
+		Log.debug(LogCategory.KNOT, "Replacing %s with %s on the classpath", gameJar, bakedJar);
+
+		try {
+			classLoader.replaceURL(UrlUtil.asUrl(gameJar), UrlUtil.asUrl(bakedJar));
+		} catch (MalformedURLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Notifies Knot that all mod initializers ran and the game is about to start.
+	 */
+	public void onModInitFinished() {
+		classLoader.getDelegate().finishPreloading();
+
+		if (classLoader instanceof KnotClassLoader) {
+			((KnotClassLoader) classLoader).logLookupStats();
+		}
+
+		IMixinService mixinService = MixinService.getService();
+
+		if (mixinService instanceof MixinServiceKnot) {
+			((MixinServiceKnot) mixinService).clearCaches();
+		}
+
+		MixinApplicationProfiler mixinProfiler = MixinApplicationProfiler.get();
+		if (mixinProfiler != null) mixinProfiler.writeReport(); // startup report, the full one is written separately on exit
+	}
+
 	@Override
 	public String getTargetNamespace() {
 		// TODO: Won't work outside of Yarn
@@ -214,11 +266,7 @@ public final class Knot extends FabricLauncherBase {
 
 	@Override
 	public InputStream getResourceAsStream(String name) {
-		try {
-			return classLoader.getResourceAsStream(name, false);
-		} catch (IOException e) {
-			throw new RuntimeException("Failed to read file '" + name + "'!", e);
-		}
+		return ((ClassLoader) classLoader).getResourceAsStream(name);
 	}
 
 	@Override
@@ -16,51 +16,187 @@
 
 package net.fabricmc.loader.impl.launch.knot;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.JarURLConnection;
 import java.net.URISyntaxException;
 import java.net.URL;
-import java.net.URLConnection;
+import java.nio.ByteBuffer;
 import java.nio.file.FileSystemNotFoundException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.CodeSource;
 import java.security.cert.Certificate;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 
 import org.spongepowered.asm.mixin.transformer.FabricMixinTransformerProxy;
 
 import net.fabricmc.api.EnvType;
+import net.fabricmc.loader.impl.FabricLoaderImpl;
 import net.fabricmc.loader.impl.game.GameProvider;
 import net.fabricmc.loader.impl.launch.FabricLauncherBase;
 import net.fabricmc.loader.impl.transformer.FabricTransformer;
-import net.fabricmc.loader.impl.util.FileSystemUtil;
 import net.fabricmc.loader.impl.util.UrlConversionException;
 import net.fabricmc.loader.impl.util.UrlUtil;
+import net.fabricmc.loader.impl.util.log.Log;
+import net.fabricmc.loader.impl.util.log.LogCategory;
 
 class KnotClassDelegate {
-	static class Metadata {
+	private static final String CLASS_SUFFIX = ".class";
+
+	/**
+	 * Per code source metadata, the manifest and code source are loaded once on first use.
+	 */
+	static final class Metadata {
 		static final Metadata EMPTY = new Metadata(null, null);
 
-		final Manifest manifest;
-		final CodeSource codeSource;
+		private final URL codeSourceUrl;
+		private final JarFile jar;
+		private volatile boolean loaded;
+		private Manifest manifest;
+		private CodeSource codeSource;
+
+		/**
+		 * @param jar the already opened archive backing the code source, null to open it on demand if it's a file
+		 */
+		Metadata(URL codeSourceUrl, JarFile jar) {
+			this.codeSourceUrl = codeSourceUrl;
+			this.jar = jar;
+			this.loaded = codeSourceUrl == null;
+		}
+
+		Manifest getManifest() {
+			if (!loaded) load();
+
+			return manifest;
+		}
+
+		CodeSource getCodeSource() {
+			if (!loaded) load();
+
+			return codeSource;
+		}
+
+		private synchronized void load() {
+			if (loaded) return;
+
+			Manifest manifest = null;
+
+			try {
+				if (jar != null) {
+					manifest = jar.getManifest();
+				} else {
+					Path path = UrlUtil.asPath(codeSourceUrl);
+
+					if (Files.isRegularFile(path)) {
+						try (JarFile jar = new JarFile(path.toFile(), false)) {
+							manifest = jar.getManifest();
+						}
+					}
+				}
+			} catch (IOException | FileSystemNotFoundException | URISyntaxException e) {
+				if (FabricLauncherBase.getLauncher().isDevelopment()) {
+					Log.warn(LogCategory.KNOT, "Failed to load manifest for %s", codeSourceUrl, e);
+				}
+			}
 
-		Metadata(Manifest manifest, CodeSource codeSource) {
 			this.manifest = manifest;
-			this.codeSource = codeSource;
+			this.codeSource = new CodeSource(codeSourceUrl, (Certificate[]) null);
+			loaded = true;
+		}
+	}
+
+	/**
+	 * A class file located on the class path, along with the metadata of the code source providing it.
+	 */
+	abstract static class ClassFile {
+		private static final ThreadLocal<byte[]> READ_BUFFER = ThreadLocal.withInitial(() -> new byte[16384]);
+
+		final Metadata metadata;
+		private final int size;
+
+		/**
+		 * @param size the size of the class file, -1 if unknown
+		 */
+		ClassFile(Metadata metadata, int size) {
+			this.metadata = metadata;
+			this.size = size;
+		}
+
+		abstract InputStream open() throws IOException;
+
+		/**
+		 * Reads the class file into a new array, which is allocated only once if the size is known.
+		 */
+		byte[] readBytes() throws IOException {
+			try (InputStream is = open()) {
+				if (size < 0) {
+					int len = readPooled(is);
+					return Arrays.copyOf(READ_BUFFER.get(), len);
+				}
+
+				byte[] ret = new byte[size];
+				int pos = 0;
+				int len;
+
+				while (pos < size && (len = is.read(ret, pos, size - pos)) > 0) {
+					pos += len;
+				}
+
+				return pos == size ? ret : Arrays.copyOf(ret, pos);
+			}
+		}
+
+		/**
+		 * Reads the class file for defining it as-is.
+		 *
+		 * <p>The returned buffer may be backed by a per-thread pool, it's only valid until the next read on the same
+		 * thread. Defining a class copies the buffer before resolving any other class, so nested loads are fine.</p>
+		 */
+		ByteBuffer readBuffer() throws IOException {
+			try (InputStream is = open()) {
+				int len = readPooled(is);
+				return ByteBuffer.wrap(READ_BUFFER.get(), 0, len);
+			}
+		}
+
+		private static int readPooled(InputStream is) throws IOException {
+			byte[] buffer = READ_BUFFER.get();
+			int pos = 0;
+			int len;
+
+			while ((len = is.read(buffer, pos, buffer.length - pos)) >= 0) {
+				pos += len;
+
+				if (pos == buffer.length) {
+					buffer = Arrays.copyOf(buffer, buffer.length * 2);
+					READ_BUFFER.set(buffer);
+				}
+			}
+
+			return pos;
+		}
+
+		static ClassFile of(URL url, Metadata metadata) {
+			return new ClassFile(metadata, -1) {
+				@Override
+				InputStream open() throws IOException {
+					return url.openStream();
+				}
+			};
 		}
 	}
 
-	private final Map<String, Metadata> metadataCache = new HashMap<>();
+	private final Map<String, Metadata> metadataCache = new ConcurrentHashMap<>();
 	private final KnotClassLoaderInterface itf;
 	private final GameProvider provider;
 	private final boolean isDevelopment;
 	private final EnvType envType;
 	private FabricMixinTransformerProxy mixinTransformer;
+	private KnotClassPreloader preloader;
 	private boolean transformInitialized = false;
 
 	KnotClassDelegate(boolean isDevelopment, EnvType envType, KnotClassLoaderInterface itf, GameProvider provider) {
@@ -77,7 +213,9 @@ class KnotClassDelegate {
 
 		mixinTransformer = new FabricMixinTransformerProxy();
 
+		preloader = KnotClassPreloader.create(FabricLoaderImpl.INSTANCE.getGameDir(), envType, (ClassLoader) itf, this);
 		transformInitialized = true;
+		if (preloader != null) preloader.start();
 	}
 
 	private FabricMixinTransformerProxy getMixinTransformer() {
@@ -85,10 +223,16 @@ class KnotClassDelegate {
 		return mixinTransformer;
 	}
 
-	Metadata getMetadata(String name, URL resourceURL) {
+	/**
+	 * Registers a code source as it's being added to the class path.
+	 */
+	void addCodeSource(Metadata metadata) {
+		metadataCache.putIfAbsent(metadata.codeSourceUrl.toString(), metadata);
+	}
+
+	Metadata getMetadata(String filename, URL resourceURL) {
 		if (resourceURL != null) {
 			URL codeSourceURL = null;
-			String filename = name.replace('.', '/') + ".class";
 
 			try {
 				codeSourceURL = UrlUtil.getSource(filename, resourceURL);
@@ -97,70 +241,92 @@ class KnotClassDelegate {
 			}
 
 			if (codeSourceURL != null) {
-				return metadataCache.computeIfAbsent(codeSourceURL.toString(), (codeSourceStr) -> {
-					Manifest manifest = null;
-					CodeSource codeSource = null;
-					Certificate[] certificates = null;
-					URL fCodeSourceUrl = null;
-
-					try {
-						fCodeSourceUrl = new URL(codeSourceStr);
-						Path path = UrlUtil.asPath(fCodeSourceUrl);
-
-						if (Files.isRegularFile(path)) {
-							URLConnection connection = new URL("jar:" + codeSourceStr + "!/").openConnection();
-
-							if (connection instanceof JarURLConnection) {
-								manifest = ((JarURLConnection) connection).getManifest();
-								certificates = ((JarURLConnection) connection).getCertificates();
-							}
-
-							if (manifest == null) {
-								try (FileSystemUtil.FileSystemDelegate jarFs = FileSystemUtil.getJarFileSystem(path, false)) {
-									Path manifestPath = jarFs.get().getPath("META-INF/MANIFEST.MF");
-
-									if (Files.exists(manifestPath)) {
-										try (InputStream stream = Files.newInputStream(manifestPath)) {
-											manifest = new Manifest(stream);
-
-											// TODO
-											/* JarEntry codeEntry = codeSourceJar.getJarEntry(filename);
-
-											if (codeEntry != null) {
-												codeSource = new CodeSource(codeSourceURL, codeEntry.getCodeSigners());
-											} */
-										}
-									}
-								}
-							}
-						}
-					} catch (IOException | FileSystemNotFoundException | URISyntaxException e) {
-						if (FabricLauncherBase.getLauncher().isDevelopment()) {
-							System.err.println("Failed to load manifest: " + e);
-							e.printStackTrace();
-						}
-					}
+				String key = codeSourceURL.toString();
+				Metadata ret = metadataCache.get(key);
 
-					if (codeSource == null) {
-						codeSource = new CodeSource(fCodeSourceUrl, certificates);
-					}
+				if (ret == null) { // code source not added through addURL, e.g. from the parent class loader
+					ret = new Metadata(codeSourceURL, null);
+					Metadata prev = metadataCache.putIfAbsent(key, ret);
+					if (prev != null) ret = prev;
+				}
 
-					return new Metadata(manifest, codeSource);
-				});
+				return ret;
 			}
 		}
 
 		return Metadata.EMPTY;
 	}
 
-	public byte[] getPostMixinClassByteArray(String name) {
-		byte[] transformedClassArray = getPreMixinClassByteArray(name, true);
+	/**
+	 * Lets preloading define classes, called once all preLaunch entrypoints ran. Mods may add mixin configs until then.
+	 */
+	void onPreLaunchFinished() {
+		if (preloader != null) preloader.onPreLaunchFinished();
+	}
+
+	/**
+	 * Stops recording and preloading classes, called once the game finished initializing mods.
+	 */
+	void finishPreloading() {
+		if (preloader != null) preloader.finish();
+	}
 
-		if (!transformInitialized || !canTransformClass(name)) {
-			return transformedClassArray;
+	/**
+	 * Locates a class file, this is the only class path search done for loading a class.
+	 *
+	 * @return the class file or null if it can't be found
+	 */
+	ClassFile findClassFile(String name, boolean skipOriginalLoader) {
+		return itf.findClassFile(getClassFileName(name), skipOriginalLoader);
+	}
+
+	/**
+	 * Gets the contents of a class that doesn't go through any transformer, to define it without copying.
+	 *
+	 * @param file the class file as returned by {@link #findClassFile}
+	 * @return the class contents as returned by {@link ClassFile#readBuffer}, or null if the class gets transformed
+	 */
+	ByteBuffer getUntransformedClassBuffer(String name, ClassFile file) {
+		if (transformInitialized && canTransformClass(name)) return null;
+
+		ByteBuffer ret;
+
+		try {
+			ret = file.readBuffer();
+		} catch (IOException e) {
+			throw new RuntimeException("Failed to load class file for '" + name + "'!", e);
 		}
 
-		return getMixinTransformer().transformClassBytes(name, name, transformedClassArray);
+		KnotClassPreloader preloader = this.preloader;
+		if (preloader != null) preloader.record(name);
+
+		return ret;
+	}
+
+	/**
+	 * Gets the fully transformed bytes of a class.
+	 *
+	 * @param file the class file as returned by {@link #findClassFile}, null if it doesn't exist
+	 */
+	byte[] getPostMixinClassByteArray(String name, ClassFile file) {
+		KnotClassPreloader preloader = this.preloader;
+
+		boolean transform = transformInitialized && canTransformClass(name);
+		byte[] transformedClassArray = null;
+
+		if (preloader != null) {
+			// only the transformers before mixin ran in advance, mixin always runs on the defining thread
+			transformedClassArray = preloader.takePrefetched(name);
+		}
+
+		if (transformedClassArray == null) {
+			transformedClassArray = getPreMixinClassByteArray(name, file, transform);
+		}
+
+		byte[] ret = transform ? getMixinTransformer().transformClassBytes(name, name, transformedClassArray) : transformedClassArray;
+		if (preloader != null && ret != null) preloader.record(name);
+
+		return ret;
 	}
 
 	/**
@@ -170,56 +336,70 @@ class KnotClassDelegate {
 		// some of the transformers rely on dot notation
 		name = name.replace('/', '.');
 
-		if (!transformInitialized || !canTransformClass(name)) {
+		return getPreMixinClassByteArray(name, findClassFile(name, skipOriginalLoader), transformInitialized && canTransformClass(name));
+	}
+
+	/**
+	 * @param name the class name in dot notation
+	 */
+	private byte[] getPreMixinClassByteArray(String name, ClassFile file, boolean transform) {
+		if (!transform) {
 			try {
-				return getRawClassByteArray(name, skipOriginalLoader);
+				return readClassFile(file);
 			} catch (IOException e) {
 				throw new RuntimeException("Failed to load class file for '" + name + "'!", e);
 			}
 		}
 
 		byte[] input = provider.getEntrypointTransformer().transform(name);
+		URL source = null; // patched entrypoints don't come from the class file
 
 		if (input == null) {
 			try {
-				input = getRawClassByteArray(name, skipOriginalLoader);
+				input = readClassFile(file);
 			} catch (IOException e) {
 				throw new RuntimeException("Failed to load class file for '" + name + "'!", e);
 			}
+
+			if (file != null) source = file.metadata.codeSourceUrl;
 		}
 
 		if (input != null) {
-			return FabricTransformer.transform(isDevelopment, envType, name, input);
+			return FabricTransformer.transform(isDevelopment, envType, name, input, source);
 		}
 
 		return null;
 	}
 
+	/**
+	 * @param name the class name in dot notation
+	 */
 	private static boolean canTransformClass(String name) {
-		name = name.replace('/', '.');
 		// Blocking Fabric Loader classes is no longer necessary here as they don't exist on the modding class loader
 		return /* !"net.fabricmc.api.EnvType".equals(name) && !name.startsWith("net.fabricmc.loader.") && */ !name.startsWith("org.apache.logging.log4j");
 	}
 
 	String getClassFileName(String name) {
-		return name.replace('.', '/') + ".class";
+		int len = name.length();
+		char[] chars = new char[len + CLASS_SUFFIX.length()];
+		name.getChars(0, len, chars, 0);
+
+		for (int i = 0; i < len; i++) {
+			if (chars[i] == '.') chars[i] = '/';
+		}
+
+		CLASS_SUFFIX.getChars(0, CLASS_SUFFIX.length(), chars, len);
+
+		return new String(chars);
 	}
 
 	public byte[] getRawClassByteArray(String name, boolean skipOriginalLoader) throws IOException {
-		String classFile = getClassFileName(name);
-		InputStream inputStream = itf.getResourceAsStream(classFile, skipOriginalLoader);
-		if (inputStream == null) return null;
-
-		int a = inputStream.available();
-		ByteArrayOutputStream outputStream = new ByteArrayOutputStream(a < 32 ? 32768 : a);
-		byte[] buffer = new byte[8192];
-		int len;
+		name = name.replace('/', '.');
 
-		while ((len = inputStream.read(buffer)) > 0) {
-			outputStream.write(buffer, 0, len);
-		}
+		return readClassFile(findClassFile(name, skipOriginalLoader));
+	}
 
-		inputStream.close();
-		return outputStream.toByteArray();
+	private static byte[] readClassFile(ClassFile file) throws IOException {
+		return file != null ? file.readBytes() : null;
 	}
 }
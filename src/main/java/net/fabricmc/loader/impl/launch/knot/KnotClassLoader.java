@@ -19,39 +19,35 @@ package net.fabricmc.loader.impl.launch.knot;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
-import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
 import java.security.SecureClassLoader;
 import java.util.Enumeration;
 import java.util.Objects;
 
 import net.fabricmc.api.EnvType;
 import net.fabricmc.loader.impl.game.GameProvider;
+import net.fabricmc.loader.impl.util.log.Log;
+import net.fabricmc.loader.impl.util.log.LogCategory;
 
 class KnotClassLoader extends SecureClassLoader implements KnotClassLoaderInterface {
-	private static class DynamicURLClassLoader extends URLClassLoader {
-		private DynamicURLClassLoader(URL[] urls) {
-			super(urls, new DummyClassLoader());
-		}
-
-		@Override
-		public void addURL(URL url) {
-			super.addURL(url);
-		}
-
-		static {
-			registerAsParallelCapable();
-		}
-	}
-
-	private final DynamicURLClassLoader urlLoader;
+	private final ClassPathIndex classPath;
 	private final ClassLoader originalLoader;
 	private final KnotClassDelegate delegate;
+	final NegativeLookupCache missingClasses = new NegativeLookupCache();
+	final NegativeLookupCache missingResources = new NegativeLookupCache();
+	private final boolean isDevelopment;
+	private volatile boolean cachingMisses;
+	private volatile String lastPackage;
 
 	KnotClassLoader(boolean isDevelopment, EnvType envType, GameProvider provider) {
-		super(new DynamicURLClassLoader(new URL[0]));
+		// The class path used to live in a URLClassLoader parent. It's in the ClassPathIndex now, so the parent finds
+		// nothing and getParent() no longer exposes the added URLs. All lookups go through the overrides below anyway.
+		super(new DummyClassLoader());
 		this.originalLoader = getClass().getClassLoader();
-		this.urlLoader = (DynamicURLClassLoader) getParent();
+		this.classPath = new ClassPathIndex();
 		this.delegate = new KnotClassDelegate(isDevelopment, envType, this, provider);
+		this.isDevelopment = isDevelopment;
+		this.cachingMisses = !isDevelopment;
 	}
 
 	@Override
@@ -70,10 +66,15 @@ class KnotClassLoader extends SecureClassLoader implements KnotClassLoaderInterf
 	public URL getResource(String name) {
 		Objects.requireNonNull(name);
 
-		URL url = urlLoader.getResource(name);
+		int generation = missingResources.getGeneration(); // before the flag, which changes ahead of the generation
+		boolean cacheMisses = cachingMisses;
+		if (cacheMisses && missingResources.isMissing(name)) return null;
+
+		URL url = classPath.getResource(name);
 
 		if (url == null) {
 			url = originalLoader.getResource(name);
+			if (url == null && cacheMisses) missingResources.add(name, generation);
 		}
 
 		return url;
@@ -81,17 +82,30 @@ class KnotClassLoader extends SecureClassLoader implements KnotClassLoaderInterf
 
 	@Override
 	protected URL findResource(String name) {
-		return urlLoader.findResource(name);
+		return classPath.getResource(name);
 	}
 
 	@Override
 	public InputStream getResourceAsStream(String name) {
 		Objects.requireNonNull(name);
 
-		InputStream inputStream = urlLoader.getResourceAsStream(name);
+		int generation = missingResources.getGeneration(); // before the flag, which changes ahead of the generation
+		boolean cacheMisses = cachingMisses;
+		if (cacheMisses && missingResources.isMissing(name)) return null;
+
+		InputStream inputStream;
+		boolean failed = false;
+
+		try {
+			inputStream = classPath.getResourceAsStream(name);
+		} catch (IOException e) {
+			inputStream = null;
+			failed = true;
+		}
 
 		if (inputStream == null) {
 			inputStream = originalLoader.getResourceAsStream(name);
+			if (inputStream == null && !failed && cacheMisses) missingResources.add(name, generation);
 		}
 
 		return inputStream;
@@ -101,7 +115,7 @@ class KnotClassLoader extends SecureClassLoader implements KnotClassLoaderInterf
 	public Enumeration<URL> getResources(String name) throws IOException {
 		Objects.requireNonNull(name);
 
-		Enumeration<URL> first = urlLoader.getResources(name);
+		Enumeration<URL> first = classPath.getResources(name);
 		Enumeration<URL> second = originalLoader.getResources(name);
 		return new Enumeration<URL>() {
 			Enumeration<URL> current = first;
@@ -147,32 +161,53 @@ class KnotClassLoader extends SecureClassLoader implements KnotClassLoaderInterf
 	protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
 		synchronized (getClassLoadingLock(name)) {
 			Class<?> c = findLoadedClass(name);
+			int generation = missingClasses.getGeneration(); // before the flag, which changes ahead of the generation
+			boolean cacheMisses = cachingMisses;
+
+			if (c == null && cacheMisses && missingClasses.isMissing(name)) {
+				throw new ClassNotFoundException(name);
+			}
 
 			// FIXME: remove the GSON exclusion once loader stops using gson.
 			// We now repackage Gson's JsonReader so removal is now possible
 			if (c == null && !name.startsWith("com.google.gson.") && !name.startsWith("java.")) {
-				byte[] input = delegate.getPostMixinClassByteArray(name);
+				KnotClassDelegate.ClassFile file = delegate.findClassFile(name, true);
+				ByteBuffer buffer = file != null ? delegate.getUntransformedClassBuffer(name, file) : null;
+				byte[] input = buffer == null ? delegate.getPostMixinClassByteArray(name, file) : null;
 
-				if (input != null) {
-					KnotClassDelegate.Metadata metadata = delegate.getMetadata(name, urlLoader.getResource(delegate.getClassFileName(name)));
+				if (buffer != null || input != null) {
+					KnotClassDelegate.Metadata metadata = file != null ? file.metadata : KnotClassDelegate.Metadata.EMPTY;
 
 					int pkgDelimiterPos = name.lastIndexOf('.');
+					String lastPkg = lastPackage;
 
-					if (pkgDelimiterPos > 0) {
+					// classes are mostly loaded package by package, skip the lookup while it's the same as last time
+					if (pkgDelimiterPos > 0 && (lastPkg == null || lastPkg.length() != pkgDelimiterPos || !name.startsWith(lastPkg))) {
 						// TODO: package definition stub
 						String pkgString = name.substring(0, pkgDelimiterPos);
 
 						if (getPackage(pkgString) == null) {
 							definePackage(pkgString, null, null, null, null, null, null, null);
 						}
+
+						lastPackage = pkgString;
 					}
 
-					c = defineClass(name, input, 0, input.length, metadata.codeSource);
+					if (buffer != null) {
+						c = defineClass(name, buffer, metadata.getCodeSource());
+					} else {
+						c = defineClass(name, input, 0, input.length, metadata.getCodeSource());
+					}
 				}
 			}
 
 			if (c == null) {
-				c = originalLoader.loadClass(name);
+				try {
+					c = originalLoader.loadClass(name);
+				} catch (ClassNotFoundException e) {
+					if (cacheMisses) missingClasses.add(name, generation);
+					throw e;
+				}
 			}
 
 			if (resolve) {
@@ -185,7 +220,36 @@ class KnotClassLoader extends SecureClassLoader implements KnotClassLoaderInterf
 
 	@Override
 	public void addURL(URL url) {
-		urlLoader.addURL(url);
+		delegate.addCodeSource(classPath.add(url));
+		onClassPathChanged();
+	}
+
+	/**
+	 * Swaps a class path entry for another one at the same position, see {@link ClassPathIndex#replace}.
+	 */
+	void replaceURL(URL url, URL replacement) {
+		delegate.addCodeSource(classPath.replace(url, replacement));
+		onClassPathChanged();
+	}
+
+	private void onClassPathChanged() {
+		cachingMisses = !isDevelopment && !classPath.isMutable();
+		missingClasses.invalidate();
+		missingResources.invalidate();
+	}
+
+	/**
+	 * Checks whether failed lookups are remembered. They aren't in a development environment or while the class path
+	 * contains directories, files generated at runtime (e.g. by data generators or hot swapping) have to show up.
+	 */
+	boolean isCachingMisses() {
+		return cachingMisses;
+	}
+
+	void logLookupStats() {
+		Log.debug(LogCategory.KNOT, "Negative lookup cache: classes %d hits / %d misses (%d cached), resources %d hits / %d misses (%d cached)",
+				missingClasses.getHits(), missingClasses.getMisses(), missingClasses.size(),
+				missingResources.getHits(), missingResources.getMisses(), missingResources.size());
 	}
 
 	static {
@@ -193,13 +257,17 @@ class KnotClassLoader extends SecureClassLoader implements KnotClassLoaderInterf
 	}
 
 	@Override
-	public InputStream getResourceAsStream(String classFile, boolean skipOriginalLoader) throws IOException {
-		InputStream inputStream = urlLoader.getResourceAsStream(classFile);
+	public KnotClassDelegate.ClassFile findClassFile(String classFile, boolean skipOriginalLoader) {
+		KnotClassDelegate.ClassFile ret = classPath.findClassFile(classFile);
 
-		if (inputStream == null && !skipOriginalLoader) {
-			inputStream = originalLoader.getResourceAsStream(classFile);
+		if (ret == null && !skipOriginalLoader) {
+			URL url = originalLoader.getResource(classFile);
+
+			if (url != null) {
+				ret = KnotClassDelegate.ClassFile.of(url, delegate.getMetadata(classFile, url));
+			}
 		}
 
-		return inputStream;
+		return ret;
 	}
 }
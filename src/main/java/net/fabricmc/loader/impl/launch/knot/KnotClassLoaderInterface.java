@@ -16,13 +16,11 @@
 
 package net.fabricmc.loader.impl.launch.knot;
 
-import java.io.IOException;
-import java.io.InputStream;
 import java.net.URL;
 
 interface KnotClassLoaderInterface {
 	KnotClassDelegate getDelegate();
 	boolean isClassLoaded(String name);
 	void addURL(URL url);
-	InputStream getResourceAsStream(String filename, boolean skipOriginalLoader) throws IOException;
+	KnotClassDelegate.ClassFile findClassFile(String filename, boolean skipOriginalLoader);
 }
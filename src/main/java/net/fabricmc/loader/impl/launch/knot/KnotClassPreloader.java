@@ -0,0 +1,208 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.impl.launch.knot;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.fabricmc.api.EnvType;
+import net.fabricmc.loader.impl.FabricLoaderImpl;
+import net.fabricmc.loader.impl.util.SystemProperties;
+import net.fabricmc.loader.impl.util.log.Log;
+import net.fabricmc.loader.impl.util.log.LogCategory;
+
+/**
+ * Records which classes Knot defines until mod initialization completes and uses the recording of the previous launch
+ * to read and transform (or fully define) those classes on worker threads ahead of the main thread.
+ *
+ * <p>Prefetching stops short of mixin, which is applied by whichever thread defines the class. Mods may add mixin
+ * configs in their preLaunch entrypoints, so defining classes in advance only starts once those ran.</p>
+ */
+final class KnotClassPreloader {
+	private static final int MAX_PROFILE_SIZE = 65536;
+
+	enum Mode {
+		/** Only record the profile. */
+		RECORD,
+		/** Record, prefetch class bytes with all transformations except mixin applied. */
+		TRANSFORM,
+		/** Record, define the classes once preLaunch finished. */
+		DEFINE;
+	}
+
+	private final Mode mode;
+	private final Path profileFile;
+	private final ClassLoader loader;
+	private final KnotClassDelegate delegate;
+	private final Set<String> recorded = Collections.synchronizedSet(new LinkedHashSet<>());
+	private final Map<String, byte[]> prefetched = new ConcurrentHashMap<>();
+	private volatile boolean recording = true;
+
+	private KnotClassPreloader(Mode mode, Path profileFile, ClassLoader loader, KnotClassDelegate delegate) {
+		this.mode = mode;
+		this.profileFile = profileFile;
+		this.loader = loader;
+		this.delegate = delegate;
+	}
+
+	static KnotClassPreloader create(Path gameDir, EnvType envType, ClassLoader loader, KnotClassDelegate delegate) {
+		String value = System.getProperty(SystemProperties.CLASS_PRELOAD);
+		if (value == null || value.equals("false")) return null;
+
+		Mode mode;
+
+		switch (value.toLowerCase(Locale.ROOT)) {
+		case "record":
+			mode = Mode.RECORD;
+			break;
+		case "true":
+		case "transform":
+			mode = Mode.TRANSFORM;
+			break;
+		case "define":
+			mode = Mode.DEFINE;
+			break;
+		default:
+			Log.warn(LogCategory.KNOT, "Invalid value for %s: %s, class preloading disabled", SystemProperties.CLASS_PRELOAD, value);
+			return null;
+		}
+
+		Path profileFile = gameDir.resolve(FabricLoaderImpl.CACHE_DIR_NAME)
+				.resolve(String.format("classLoadProfile-%s.txt", envType.name().toLowerCase(Locale.ROOT)));
+
+		return new KnotClassPreloader(mode, profileFile, loader, delegate);
+	}
+
+	/**
+	 * Starts prefetching, called once the transformers are ready.
+	 */
+	void start() {
+		if (mode == Mode.TRANSFORM) submit();
+	}
+
+	void onPreLaunchFinished() {
+		if (mode == Mode.DEFINE) submit();
+	}
+
+	private void submit() {
+		if (!recording) return;
+
+		List<String> profile;
+
+		try {
+			profile = Files.readAllLines(profileFile, StandardCharsets.UTF_8);
+		} catch (NoSuchFileException e) {
+			Log.debug(LogCategory.KNOT, "No class load profile at %s yet", profileFile);
+			return;
+		} catch (IOException e) {
+			Log.warn(LogCategory.KNOT, "Can't read class load profile %s", profileFile, e);
+			return;
+		}
+
+		int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+		AtomicInteger threadCounter = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+			Thread ret = new Thread(r, "Knot Preload #" + threadCounter.incrementAndGet());
+			ret.setDaemon(true);
+			ret.setPriority(Thread.NORM_PRIORITY - 1);
+			return ret;
+		});
+
+		Log.debug(LogCategory.KNOT, "Preloading %d classes (%s) on %d threads", profile.size(), mode, threads);
+
+		for (String name : profile) {
+			if (name.isEmpty()) continue;
+
+			executor.execute(() -> preload(name));
+		}
+
+		executor.shutdown();
+	}
+
+	private void preload(String name) {
+		if (!recording) return; // game initialization is done, anything left isn't worth it
+
+		try {
+			if (mode == Mode.DEFINE) {
+				Class.forName(name, false, loader);
+			} else if (!((KnotClassLoaderInterface) loader).isClassLoaded(name) && !prefetched.containsKey(name)) {
+				byte[] bytes = delegate.getPreMixinClassByteArray(name, true);
+				if (bytes != null && recording) prefetched.putIfAbsent(name, bytes);
+			}
+		} catch (Throwable t) {
+			// the profile may be outdated, the main thread will report any actual problem
+			Log.trace(LogCategory.KNOT, "Preloading %s failed", name, t);
+		}
+	}
+
+	byte[] takePrefetched(String name) {
+		return prefetched.isEmpty() ? null : prefetched.remove(name);
+	}
+
+	/**
+	 * Records a class getting defined, also when that happens on a preload thread. Those classes don't reach the main
+	 * thread's class loading anymore, so they would fall out of the profile otherwise.
+	 */
+	void record(String name) {
+		if (!recording) return;
+
+		if (recorded.size() < MAX_PROFILE_SIZE) {
+			recorded.add(name);
+		}
+	}
+
+	/**
+	 * Stops recording and preloading, then saves the profile for the next launch.
+	 */
+	void finish() {
+		if (!recording) return;
+
+		recording = false; // makes the remaining preload tasks return immediately
+		prefetched.clear();
+
+		List<String> profile;
+
+		synchronized (recorded) {
+			profile = new ArrayList<>(recorded);
+		}
+
+		try {
+			Files.createDirectories(profileFile.getParent());
+			Path tmp = profileFile.resolveSibling(profileFile.getFileName() + ".tmp");
+			Files.write(tmp, profile, StandardCharsets.UTF_8);
+			Files.move(tmp, profileFile, StandardCopyOption.REPLACE_EXISTING);
+			Log.debug(LogCategory.KNOT, "Saved class load profile with %d classes to %s", profile.size(), profileFile);
+		} catch (IOException e) {
+			Log.warn(LogCategory.KNOT, "Can't save class load profile %s", profileFile, e);
+		}
+	}
+}
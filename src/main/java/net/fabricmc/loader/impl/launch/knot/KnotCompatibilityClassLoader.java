@@ -16,16 +16,16 @@
 
 package net.fabricmc.loader.impl.launch.knot;
 
-import java.io.IOException;
-import java.io.InputStream;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
 
 import net.fabricmc.api.EnvType;
 import net.fabricmc.loader.impl.game.GameProvider;
 
 class KnotCompatibilityClassLoader extends URLClassLoader implements KnotClassLoaderInterface {
 	private final KnotClassDelegate delegate;
+	private volatile String lastPackage;
 
 	KnotCompatibilityClassLoader(boolean isDevelopment, EnvType envType, GameProvider provider) {
 		super(new URL[0], KnotCompatibilityClassLoader.class.getClassLoader());
@@ -50,23 +50,33 @@ class KnotCompatibilityClassLoader extends URLClassLoader implements KnotClassLo
 			Class<?> c = findLoadedClass(name);
 
 			if (c == null) {
-				byte[] input = delegate.getPostMixinClassByteArray(name);
+				KnotClassDelegate.ClassFile file = delegate.findClassFile(name, true);
+				ByteBuffer buffer = file != null ? delegate.getUntransformedClassBuffer(name, file) : null;
+				byte[] input = buffer == null ? delegate.getPostMixinClassByteArray(name, file) : null;
 
-				if (input != null) {
-					KnotClassDelegate.Metadata metadata = delegate.getMetadata(name, getResource(delegate.getClassFileName(name)));
+				if (buffer != null || input != null) {
+					KnotClassDelegate.Metadata metadata = file != null ? file.metadata : KnotClassDelegate.Metadata.EMPTY;
 
 					int pkgDelimiterPos = name.lastIndexOf('.');
+					String lastPkg = lastPackage;
 
-					if (pkgDelimiterPos > 0) {
+					// classes are mostly loaded package by package, skip the lookup while it's the same as last time
+					if (pkgDelimiterPos > 0 && (lastPkg == null || lastPkg.length() != pkgDelimiterPos || !name.startsWith(lastPkg))) {
 						// TODO: package definition stub
 						String pkgString = name.substring(0, pkgDelimiterPos);
 
 						if (getPackage(pkgString) == null) {
 							definePackage(pkgString, null, null, null, null, null, null, null);
 						}
+
+						lastPackage = pkgString;
 					}
 
-					c = defineClass(name, input, 0, input.length, metadata.codeSource);
+					if (buffer != null) {
+						c = defineClass(name, buffer, metadata.getCodeSource());
+					} else {
+						c = defineClass(name, input, 0, input.length, metadata.getCodeSource());
+					}
 				}
 			}
 
@@ -85,6 +95,7 @@ class KnotCompatibilityClassLoader extends URLClassLoader implements KnotClassLo
 	@Override
 	public void addURL(URL url) {
 		super.addURL(url);
+		delegate.addCodeSource(new KnotClassDelegate.Metadata(url, null));
 	}
 
 	static {
@@ -92,13 +103,9 @@ class KnotCompatibilityClassLoader extends URLClassLoader implements KnotClassLo
 	}
 
 	@Override
-	public InputStream getResourceAsStream(String classFile, boolean skipOriginalLoader) throws IOException {
-		if (skipOriginalLoader) {
-			if (findResource(classFile) == null) {
-				return null;
-			}
-		}
+	public KnotClassDelegate.ClassFile findClassFile(String classFile, boolean skipOriginalLoader) {
+		URL url = skipOriginalLoader ? findResource(classFile) : getResource(classFile);
 
-		return super.getResourceAsStream(classFile);
+		return url != null ? KnotClassDelegate.ClassFile.of(url, delegate.getMetadata(classFile, url)) : null;
 	}
 }
@@ -0,0 +1,319 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.impl.launch.knot;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.spongepowered.asm.mixin.Mixins;
+import org.spongepowered.asm.mixin.transformer.Config;
+import org.spongepowered.asm.service.IMixinAuditTrail;
+
+import net.fabricmc.api.EnvType;
+import net.fabricmc.loader.api.ModContainer;
+import net.fabricmc.loader.impl.FabricLoaderImpl;
+import net.fabricmc.loader.impl.metadata.LoaderModMetadata;
+import net.fabricmc.loader.impl.util.SystemProperties;
+import net.fabricmc.loader.impl.util.log.Log;
+import net.fabricmc.loader.impl.util.log.LogCategory;
+
+/**
+ * Records which mixins get applied to which classes and how long Mixin takes for each class, to find the mods slowing
+ * down class loading.
+ *
+ * <p>Mixin reports applied mixins through the {@link IMixinAuditTrail} callbacks while
+ * {@code FabricMixinTransformerProxy} measures each transformation. The time spent on a class excludes nested class
+ * loads and is split evenly between the mixins applied to it.</p>
+ */
+public final class MixinApplicationProfiler implements IMixinAuditTrail {
+	private static final String REPORT_FILE_NAME = "mixinProfile.txt"; // relative to .fabric
+	private static final String SHUTDOWN_REPORT_FILE_NAME = "mixinProfile-shutdown.txt"; // relative to .fabric
+	private static final int TOP_CLASSES = 10;
+	private static final MixinApplicationProfiler INSTANCE = Boolean.getBoolean(SystemProperties.MIXIN_PROFILE) ? new MixinApplicationProfiler() : null;
+
+	private final Map<String, TargetRecord> records = new ConcurrentHashMap<>();
+	private final ThreadLocal<Deque<Transformation>> activeTransformations = ThreadLocal.withInitial(ArrayDeque::new);
+
+	static {
+		if (INSTANCE != null) {
+			Runtime.getRuntime().addShutdownHook(new Thread(INSTANCE::writeShutdownReport, "Mixin profile writer"));
+		}
+	}
+
+	private MixinApplicationProfiler() { }
+
+	/**
+	 * Gets the profiler if enabled through {@link SystemProperties#MIXIN_PROFILE}.
+	 *
+	 * @return the profiler or null if profiling is disabled
+	 */
+	public static MixinApplicationProfiler get() {
+		return INSTANCE;
+	}
+
+	public void beginTransformation(String name, byte[] input) {
+		activeTransformations.get().push(new Transformation(name, input != null ? input.length : 0, System.nanoTime()));
+	}
+
+	public void endTransformation(byte[] output) {
+		Deque<Transformation> stack = activeTransformations.get();
+		Transformation transformation = stack.pop();
+		long time = System.nanoTime() - transformation.startTime;
+
+		// nested transformations (class loads triggered by Mixin) are accounted to their own classes
+		Transformation parent = stack.peek();
+		if (parent != null) parent.nestedTime += time;
+
+		TargetRecord record = getRecord(transformation.name);
+
+		synchronized (record) {
+			record.time += time - transformation.nestedTime;
+			record.bytesIn += transformation.bytesIn;
+			record.bytesOut += output != null ? output.length : 0;
+		}
+	}
+
+	@Override
+	public void onApply(String className, String mixinName) {
+		TargetRecord record = getRecord(className);
+
+		synchronized (record) {
+			record.mixins.add(mixinName);
+		}
+	}
+
+	@Override
+	public void onPostProcess(String className) { }
+
+	@Override
+	public void onGenerate(String className, String generatorName) { }
+
+	private TargetRecord getRecord(String className) {
+		return records.computeIfAbsent(className.replace('/', '.'), ignore -> new TargetRecord());
+	}
+
+	/**
+	 * Writes the report covering the startup to {@code .fabric/mixinProfile.txt} in the game directory, done once mod
+	 * initialization finished.
+	 */
+	public void writeReport() {
+		Path file = getReportFile(REPORT_FILE_NAME);
+
+		try {
+			writeReport(file);
+			Log.info(LogCategory.MIXIN, "Wrote mixin profile to %s", file);
+		} catch (IOException e) {
+			Log.warn(LogCategory.MIXIN, "Can't write mixin profile to %s", file, e);
+		}
+	}
+
+	/**
+	 * Writes the report covering the whole session to {@code .fabric/mixinProfile-shutdown.txt}, keeping the startup
+	 * report intact.
+	 *
+	 * <p>Runs in a shutdown hook, the logger may already be shut down by then, so nothing is logged.</p>
+	 */
+	private void writeShutdownReport() {
+		try {
+			writeReport(getReportFile(SHUTDOWN_REPORT_FILE_NAME));
+		} catch (IOException | RuntimeException e) {
+			// nowhere to report it
+		}
+	}
+
+	private static Path getReportFile(String name) {
+		return FabricLoaderImpl.INSTANCE.getGameDir().resolve(FabricLoaderImpl.CACHE_DIR_NAME).resolve(name);
+	}
+
+	private void writeReport(Path file) throws IOException {
+		Files.createDirectories(file.getParent());
+
+		try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			writeReport(new PrintWriter(writer));
+		}
+	}
+
+	public void writeReport(PrintWriter writer) {
+		Map<String, String> packageToMod = getMixinPackageOwners();
+		Map<String, ModStats> mods = new HashMap<>();
+		long totalTime = 0;
+
+		for (Map.Entry<String, TargetRecord> entry : records.entrySet()) {
+			TargetRecord record = entry.getValue();
+			List<String> mixins;
+			long time;
+
+			synchronized (record) {
+				mixins = new ArrayList<>(record.mixins);
+				time = record.time;
+			}
+
+			totalTime += time;
+			if (mixins.isEmpty()) continue;
+
+			long share = time / mixins.size();
+			Set<ModStats> targetMods = new HashSet<>();
+
+			for (String mixin : mixins) {
+				ModStats stats = mods.computeIfAbsent(getOwner(mixin, packageToMod), ModStats::new);
+				stats.time += share;
+				stats.mixins++;
+				targetMods.add(stats);
+			}
+
+			for (ModStats stats : targetMods) {
+				stats.classes.add(new ClassStats(entry.getKey(), record));
+			}
+		}
+
+		List<ModStats> sortedMods = new ArrayList<>(mods.values());
+		sortedMods.sort(Comparator.comparingLong((ModStats s) -> s.time).reversed());
+
+		writer.printf("Mixin profile: %d classes transformed in %.1f ms, %d of them with mixins%n%n", records.size(), totalTime * 1e-6, countWithMixins());
+
+		for (ModStats mod : sortedMods) {
+			writer.printf("%s: %.1f ms, %d mixin applications to %d classes%n", mod.id, mod.time * 1e-6, mod.mixins, mod.classes.size());
+
+			mod.classes.sort(Comparator.comparingLong((ClassStats s) -> s.time).reversed());
+
+			for (ClassStats cls : mod.classes.subList(0, Math.min(TOP_CLASSES, mod.classes.size()))) {
+				writer.printf("\t%s: %.2f ms total, %d mixins, %d -> %d bytes%n", cls.name, cls.time * 1e-6, cls.mixins, cls.bytesIn, cls.bytesOut);
+			}
+
+			writer.println();
+		}
+
+		writer.flush();
+	}
+
+	private int countWithMixins() {
+		int ret = 0;
+
+		for (TargetRecord record : records.values()) {
+			synchronized (record) {
+				if (!record.mixins.isEmpty()) ret++;
+			}
+		}
+
+		return ret;
+	}
+
+	/**
+	 * Maps the mixin package of every config to the id of the mod declaring the config.
+	 */
+	private static Map<String, String> getMixinPackageOwners() {
+		EnvType envType = FabricLoaderImpl.INSTANCE.getEnvironmentType();
+		Map<String, String> configToMod = new HashMap<>();
+
+		for (ModContainer mod : FabricLoaderImpl.INSTANCE.getAllMods()) {
+			if (!(mod.getMetadata() instanceof LoaderModMetadata)) continue;
+
+			for (String config : ((LoaderModMetadata) mod.getMetadata()).getMixinConfigs(envType)) {
+				configToMod.put(config, mod.getMetadata().getId());
+			}
+		}
+
+		Map<String, String> ret = new HashMap<>();
+
+		for (Config config : Mixins.getConfigs()) {
+			String mod = configToMod.get(config.getName());
+			if (mod != null) ret.put(config.getConfig().getMixinPackage(), mod);
+		}
+
+		return ret;
+	}
+
+	private static String getOwner(String mixin, Map<String, String> packageToMod) {
+		String ret = null;
+		int retLength = -1;
+
+		for (Map.Entry<String, String> entry : packageToMod.entrySet()) {
+			String pkg = entry.getKey();
+
+			if (pkg.length() > retLength && mixin.startsWith(pkg)) {
+				ret = entry.getValue();
+				retLength = pkg.length();
+			}
+		}
+
+		return ret != null ? ret : "<unknown>";
+	}
+
+	private static final class Transformation {
+		final String name;
+		final int bytesIn;
+		final long startTime;
+		long nestedTime;
+
+		Transformation(String name, int bytesIn, long startTime) {
+			this.name = name;
+			this.bytesIn = bytesIn;
+			this.startTime = startTime;
+		}
+	}
+
+	private static final class TargetRecord {
+		final List<String> mixins = new ArrayList<>();
+		long time;
+		long bytesIn;
+		long bytesOut;
+	}
+
+	private static final class ModStats {
+		final String id;
+		final List<ClassStats> classes = new ArrayList<>();
+		long time;
+		int mixins;
+
+		ModStats(String id) {
+			this.id = id;
+		}
+	}
+
+	private static final class ClassStats {
+		final String name;
+		final long time;
+		final int mixins;
+		final long bytesIn;
+		final long bytesOut;
+
+		ClassStats(String name, TargetRecord record) {
+			this.name = name;
+
+			synchronized (record) {
+				this.time = record.time;
+				this.mixins = record.mixins.size();
+				this.bytesIn = record.bytesIn;
+				this.bytesOut = record.bytesOut;
+			}
+		}
+	}
+}
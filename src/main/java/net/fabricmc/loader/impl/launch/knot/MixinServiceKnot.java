@@ -22,6 +22,9 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.tree.ClassNode;
@@ -38,9 +41,27 @@ import org.spongepowered.asm.service.ITransformerProvider;
 import org.spongepowered.asm.util.ReEntranceLock;
 
 import net.fabricmc.loader.impl.launch.FabricLauncherBase;
+import net.fabricmc.loader.impl.util.log.Log;
+import net.fabricmc.loader.impl.util.log.LogCategory;
 
 public class MixinServiceKnot implements IMixinService, IClassProvider, IClassBytecodeProvider, ITransformerProvider, IClassTracker {
+	private static final int CLASS_BYTES_CACHE_SIZE = 2048;
+
 	private final ReEntranceLock lock;
+	/**
+	 * Recently requested class bytes for getClassNode, Mixin asks for the same targets and super types repeatedly.
+	 *
+	 * <p>Keys are the class name with a prefix for the runTransformers flag. The bytes are never modified, nodes are
+	 * parsed from them for every call since callers may mutate them.</p>
+	 */
+	private final Map<String, byte[]> classBytesCache = new LinkedHashMap<String, byte[]>(256, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+			return size() > CLASS_BYTES_CACHE_SIZE;
+		}
+	};
+	private final LongAdder cacheHits = new LongAdder();
+	private final LongAdder cacheMisses = new LongAdder();
 
 	public MixinServiceKnot() {
 		lock = new ReEntranceLock(1);
@@ -67,12 +88,52 @@ public class MixinServiceKnot implements IMixinService, IClassProvider, IClassBy
 
 	@Override
 	public ClassNode getClassNode(String name, boolean runTransformers) throws ClassNotFoundException, IOException {
-		ClassReader reader = new ClassReader(getClassBytes(name, runTransformers));
+		ClassReader reader = new ClassReader(getCachedClassBytes(name, runTransformers));
 		ClassNode node = new ClassNode();
 		reader.accept(node, 0);
 		return node;
 	}
 
+	private byte[] getCachedClassBytes(String name, boolean runTransformers) throws ClassNotFoundException, IOException {
+		// the transformer output is only stable once Mixin and with it the transformers are set up
+		if (!FabricLauncherBase.isMixinReady()) return getClassBytes(name, runTransformers);
+
+		String key = (runTransformers ? "t:" : "r:").concat(name.replace('/', '.'));
+		byte[] ret;
+
+		synchronized (classBytesCache) {
+			ret = classBytesCache.get(key);
+		}
+
+		if (ret != null) {
+			cacheHits.increment();
+			return ret;
+		}
+
+		cacheMisses.increment();
+		ret = getClassBytes(name, runTransformers);
+
+		synchronized (classBytesCache) {
+			classBytesCache.put(key, ret);
+		}
+
+		return ret;
+	}
+
+	/**
+	 * Drops cached class bytes once the classes Mixin is interested in are most likely loaded.
+	 */
+	void clearCaches() {
+		long hits = cacheHits.sum();
+		long misses = cacheMisses.sum();
+
+		Log.debug(LogCategory.MIXIN, "Class node cache: %d hits / %d misses (%.1f%% hit rate)", hits, misses, hits + misses > 0 ? hits * 100.0 / (hits + misses) : 0.0);
+
+		synchronized (classBytesCache) {
+			classBytesCache.clear();
+		}
+	}
+
 	@Override
 	public URL[] getClassPath() {
 		// Mixin 0.7.x only uses getClassPath() to find itself; we implement CodeSource correctly,
@@ -150,7 +211,7 @@ public class MixinServiceKnot implements IMixinService, IClassProvider, IClassBy
 
 	@Override
 	public IMixinAuditTrail getAuditTrail() {
-		return null;
+		return MixinApplicationProfiler.get();
 	}
 
 	@Override
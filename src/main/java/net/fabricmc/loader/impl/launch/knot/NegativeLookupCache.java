@@ -0,0 +1,90 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.impl.launch.knot;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded set of names that couldn't be found, so repeated probes for missing classes or resources cost a single hash
+ * lookup instead of a class path search.
+ *
+ * <p>The cache has to be invalidated whenever the class path grows. Lookups capture the current generation before
+ * searching, so a miss computed against the old class path can't be recorded after the invalidation.</p>
+ */
+final class NegativeLookupCache {
+	private static final int MAX_SIZE = 16384;
+
+	private final Set<String> names = ConcurrentHashMap.newKeySet();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private volatile int generation;
+
+	int getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * Checks whether a name is known to be missing, counting the result.
+	 */
+	boolean isMissing(String name) {
+		if (names.contains(name)) {
+			hits.increment();
+			return true;
+		} else {
+			misses.increment();
+			return false;
+		}
+	}
+
+	/**
+	 * Records a missing name.
+	 *
+	 * @param generation the generation obtained before the lookup that failed
+	 */
+	void add(String name, int generation) {
+		if (generation != this.generation) return;
+
+		if (names.size() >= MAX_SIZE) {
+			names.clear(); // cheap way to stay bounded, misses come in bursts from the same code anyway
+		}
+
+		names.add(name);
+
+		if (generation != this.generation) { // raced with invalidate
+			names.remove(name);
+		}
+	}
+
+	synchronized void invalidate() {
+		generation++;
+		names.clear();
+	}
+
+	long getHits() {
+		return hits.sum();
+	}
+
+	long getMisses() {
+		return misses.sum();
+	}
+
+	int size() {
+		return names.size();
+	}
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.impl.transformer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+
+import net.fabricmc.accesswidener.AccessWidener;
+import net.fabricmc.accesswidener.AccessWidenerVisitor;
+import net.fabricmc.loader.api.ModContainer;
+import net.fabricmc.loader.impl.FabricLoaderImpl;
+import net.fabricmc.loader.impl.launch.FabricLauncherBase;
+import net.fabricmc.loader.impl.metadata.LoaderModMetadata;
+import net.fabricmc.loader.impl.util.UrlUtil;
+import net.fabricmc.loader.impl.util.log.Log;
+import net.fabricmc.loader.impl.util.log.LogCategory;
+
+/**
+ * Applies the access wideners and the package access hack to a whole game jar ahead of time, so
+ * {@link FabricTransformer} can skip them for the classes in it.
+ *
+ * <p>The output is cached next to the remapped game jars, named after a fingerprint of the loader version, the input
+ * jar, all access widener files and whether the package access hack applies. The fingerprint is also stored inside the
+ * jar and checked before reusing it. Outdated outputs for the same jar are removed.</p>
+ */
+public final class AccessWidenerBaker {
+	private static final String BAKED_JARS_DIR_NAME = "bakedJars"; // relative to .fabric
+	private static final String FINGERPRINT_ENTRY = "META-INF/fabric-aw-fingerprint";
+
+	private static volatile BakedJar bakedJar;
+
+	private AccessWidenerBaker() { }
+
+	private static final class BakedJar {
+		final String url;
+		final Set<String> classes;
+
+		BakedJar(URL url, Set<String> classes) {
+			this.url = url.toString();
+			this.classes = classes;
+		}
+	}
+
+	/**
+	 * Checks whether a class came from a baked jar, i.e. already has the access wideners and package access hack
+	 * applied.
+	 *
+	 * <p>This is only true for classes read from a jar whose stored fingerprint matched the current inputs. The same
+	 * class from another class path entry, e.g. a mod shadowing it, still needs transforming.</p>
+	 *
+	 * @param name the class name in dot notation
+	 * @param source the code source the class was read from, null if unknown
+	 */
+	public static boolean isBaked(String name, URL source) {
+		BakedJar jar = bakedJar;
+
+		return jar != null && source != null && jar.classes.contains(name) && jar.url.equals(source.toString());
+	}
+
+	/**
+	 * Bakes a game jar or reuses the previous output for the same inputs.
+	 *
+	 * <p>The caller is expected to swap the returned jar in for the input jar on the class path before any of its
+	 * classes get loaded.</p>
+	 *
+	 * @return the baked jar, or null if baking failed and the regular jar should stay in use
+	 */
+	public static Path bake(FabricLoaderImpl loader, Path gameJar) {
+		AccessWidener accessWidener = loader.getAccessWidener();
+		boolean packageAccessHack = FabricLauncherBase.getLauncher().getMappingConfiguration().requiresPackageAccessHack();
+
+		if (accessWidener.getTargets().isEmpty() && !packageAccessHack) {
+			return null; // nothing to bake
+		}
+
+		Path outputDir = loader.getGameDir().resolve(FabricLoaderImpl.CACHE_DIR_NAME).resolve(BAKED_JARS_DIR_NAME);
+		String prefix = "aw-" + gameJar.getFileName().toString().replace(".jar", "") + "-";
+		String fingerprint;
+
+		try {
+			fingerprint = computeFingerprint(loader, gameJar, packageAccessHack);
+		} catch (IOException | NoSuchAlgorithmException e) {
+			Log.warn(LogCategory.GAME_REMAP, "Can't fingerprint access wideners, not baking them", e);
+			return null;
+		}
+
+		Path output = outputDir.resolve(prefix + fingerprint + ".jar");
+
+		try {
+			Set<String> classes = Files.exists(output) ? getClasses(output, fingerprint) : null;
+
+			if (classes == null) {
+				long startTime = System.nanoTime();
+				classes = write(gameJar, output, fingerprint, accessWidener, packageAccessHack);
+				removeStale(outputDir, prefix, output);
+				Log.debug(LogCategory.GAME_REMAP, "Baked access wideners into %s in %.1f ms", output, (System.nanoTime() - startTime) * 1e-6);
+			}
+
+			bakedJar = new BakedJar(UrlUtil.asUrl(output), classes);
+		} catch (IOException e) {
+			Log.warn(LogCategory.GAME_REMAP, "Can't bake access wideners into %s", output, e);
+			return null;
+		}
+
+		return output;
+	}
+
+	private static String computeFingerprint(FabricLoaderImpl loader, Path gameJar, boolean packageAccessHack) throws IOException, NoSuchAlgorithmException {
+		MessageDigest digest = MessageDigest.getInstance("SHA-256");
+
+		ModContainer loaderMod = loader.getModContainer("fabricloader").orElseThrow(() -> new IOException("loader version unknown"));
+		update(digest, loaderMod.getMetadata().getVersion().getFriendlyString()); // covers changes to how the access is applied
+		update(digest, gameJar.toAbsolutePath().normalize().toString());
+		update(digest, Long.toString(Files.size(gameJar)));
+		update(digest, Long.toString(Files.getLastModifiedTime(gameJar).toMillis()));
+		update(digest, loader.getMappingResolver().getCurrentRuntimeNamespace());
+		update(digest, Boolean.toString(packageAccessHack));
+
+		// same order as FabricLoaderImpl.loadAccessWideners
+		for (ModContainer mod : loader.getAllMods()) {
+			String file = ((LoaderModMetadata) mod.getMetadata()).getAccessWidener();
+			if (file == null) continue;
+
+			update(digest, mod.getMetadata().getId());
+			digest.update(Files.readAllBytes(mod.getPath(file)));
+		}
+
+		StringBuilder sb = new StringBuilder();
+		byte[] hash = digest.digest();
+
+		for (int i = 0; i < 16; i++) {
+			sb.append(Character.forDigit((hash[i] >> 4) & 0xf, 16));
+			sb.append(Character.forDigit(hash[i] & 0xf, 16));
+		}
+
+		return sb.toString();
+	}
+
+	private static void update(MessageDigest digest, String s) {
+		digest.update(s.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+	}
+
+	private static Set<String> write(Path input, Path output, String fingerprint, AccessWidener accessWidener, boolean packageAccessHack) throws IOException {
+		Files.createDirectories(output.getParent());
+		Path tmp = output.resolveSibling(output.getFileName() + ".tmp");
+		Set<String> classes = new HashSet<>();
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream(65536);
+		byte[] readBuffer = new byte[8192];
+
+		try (ZipFile zf = new ZipFile(input.toFile());
+				OutputStream os = Files.newOutputStream(tmp);
+				ZipOutputStream zos = new ZipOutputStream(os)) {
+			for (Enumeration<? extends ZipEntry> e = zf.entries(); e.hasMoreElements(); ) {
+				ZipEntry entry = e.nextElement();
+				String name = entry.getName();
+				if (name.equals(FINGERPRINT_ENTRY)) continue;
+
+				buffer.reset();
+
+				try (InputStream is = zf.getInputStream(entry)) {
+					int len;
+
+					while ((len = is.read(readBuffer)) > 0) {
+						buffer.write(readBuffer, 0, len);
+					}
+				}
+
+				byte[] data = buffer.toByteArray();
+
+				if (name.endsWith(".class") && !name.startsWith("META-INF/")) {
+					String className = name.substring(0, name.length() - 6).replace('/', '.');
+					classes.add(className);
+
+					// same conditions as FabricTransformer.transform
+					if (FabricTransformer.isMinecraftClass(className)) {
+						boolean applyAccessWidener = accessWidener.getTargets().contains(className);
+
+						if (applyAccessWidener || packageAccessHack) {
+							data = transform(data, accessWidener, applyAccessWidener, packageAccessHack);
+						}
+					}
+				}
+
+				ZipEntry outEntry = new ZipEntry(name);
+				outEntry.setTime(entry.getTime());
+				zos.putNextEntry(outEntry);
+				zos.write(data);
+				zos.closeEntry();
+			}
+
+			// written last, only complete outputs carry it
+			zos.putNextEntry(new ZipEntry(FINGERPRINT_ENTRY));
+			zos.write(fingerprint.getBytes(StandardCharsets.UTF_8));
+			zos.closeEntry();
+		}
+
+		Files.move(tmp, output, StandardCopyOption.REPLACE_EXISTING);
+
+		return classes;
+	}
+
+	/**
+	 * Applies the same visitors as {@link FabricTransformer} in the same order.
+	 */
+	private static byte[] transform(byte[] data, AccessWidener accessWidener, boolean applyAccessWidener, boolean packageAccessHack) {
+		ClassReader reader = new ClassReader(data);
+		ClassWriter writer = new ClassWriter(0);
+		ClassVisitor visitor = writer;
+
+		if (applyAccessWidener) {
+			visitor = AccessWidenerVisitor.createClassVisitor(FabricLoaderImpl.ASM_VERSION, visitor, accessWidener);
+		}
+
+		if (packageAccessHack) {
+			visitor = new PackageAccessFixer(FabricLoaderImpl.ASM_VERSION, visitor);
+		}
+
+		reader.accept(visitor, 0);
+
+		return writer.toByteArray();
+	}
+
+	/**
+	 * @return the classes in the baked jar, or null if it wasn't baked for the given fingerprint
+	 */
+	private static Set<String> getClasses(Path jar, String fingerprint) throws IOException {
+		Set<String> ret = new HashSet<>();
+
+		try (ZipFile zf = new ZipFile(jar.toFile())) {
+			ZipEntry fingerprintEntry = zf.getEntry(FINGERPRINT_ENTRY);
+			if (fingerprintEntry == null) return null;
+
+			try (InputStream is = zf.getInputStream(fingerprintEntry)) {
+				ByteArrayOutputStream buffer = new ByteArrayOutputStream(64);
+				byte[] readBuffer = new byte[64];
+				int len;
+
+				while ((len = is.read(readBuffer)) > 0) {
+					buffer.write(readBuffer, 0, len);
+				}
+
+				if (!fingerprint.equals(new String(buffer.toByteArray(), StandardCharsets.UTF_8))) return null;
+			}
+
+			for (Enumeration<? extends ZipEntry> e = zf.entries(); e.hasMoreElements(); ) {
+				String name = e.nextElement().getName();
+
+				if (name.endsWith(".class") && !name.startsWith("META-INF/")) {
+					ret.add(name.substring(0, name.length() - 6).replace('/', '.'));
+				}
+			}
+		}
+
+		return ret;
+	}
+
+	private static void removeStale(Path dir, String prefix, Path current) {
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, prefix + "*.jar")) {
+			for (Path path : stream) {
+				if (!path.equals(current)) Files.deleteIfExists(path);
+			}
+		} catch (IOException e) {
+			Log.debug(LogCategory.GAME_REMAP, "Can't remove outdated baked jars", e);
+		}
+	}
+}
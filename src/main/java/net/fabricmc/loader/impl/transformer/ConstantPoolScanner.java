@@ -0,0 +1,122 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.impl.transformer;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Checks whether a class file's constant pool contains any of a set of strings, without parsing anything else.
+ *
+ * <p>Every descriptor a class file refers to, including annotation types, is a Utf8 constant pool entry. If none of the
+ * entries match, the class doesn't reference the corresponding types at all.</p>
+ */
+public final class ConstantPoolScanner {
+	private final byte[][] values;
+
+	/**
+	 * @param values the strings to look for, restricted to ASCII where the class file encoding is trivial
+	 */
+	public ConstantPoolScanner(String... values) {
+		this.values = new byte[values.length][];
+
+		for (int i = 0; i < values.length; i++) {
+			for (int j = 0; j < values[i].length(); j++) {
+				char c = values[i].charAt(j);
+				if (c == 0 || c >= 0x80) throw new IllegalArgumentException("non-ascii value: " + values[i]);
+			}
+
+			this.values[i] = values[i].getBytes(StandardCharsets.US_ASCII);
+		}
+	}
+
+	/**
+	 * Scans the constant pool of a class file.
+	 *
+	 * @return false if the class file doesn't contain any of the values, true if it does or can't be scanned
+	 */
+	public boolean containsAny(byte[] classFile) {
+		try {
+			if (readInt(classFile, 0) != 0xCAFEBABE) return true;
+
+			int count = readUnsignedShort(classFile, 8);
+			int pos = 10;
+
+			for (int i = 1; i < count; i++) {
+				switch (classFile[pos]) {
+				case 1: // Utf8
+					int len = readUnsignedShort(classFile, pos + 1);
+					if (matches(classFile, pos + 3, len)) return true;
+					pos += 3 + len;
+					break;
+				case 7: // Class
+				case 8: // String
+				case 16: // MethodType
+				case 19: // Module
+				case 20: // Package
+					pos += 3;
+					break;
+				case 15: // MethodHandle
+					pos += 4;
+					break;
+				case 3: // Integer
+				case 4: // Float
+				case 9: // Fieldref
+				case 10: // Methodref
+				case 11: // InterfaceMethodref
+				case 12: // NameAndType
+				case 17: // Dynamic
+				case 18: // InvokeDynamic
+					pos += 5;
+					break;
+				case 5: // Long
+				case 6: // Double
+					pos += 9;
+					i++; // takes two slots
+					break;
+				default: // unknown entry, can't continue
+					return true;
+				}
+			}
+
+			return false;
+		} catch (ArrayIndexOutOfBoundsException e) { // truncated class file, leave it to the real parser
+			return true;
+		}
+	}
+
+	private boolean matches(byte[] classFile, int start, int len) {
+		outer: for (byte[] value : values) {
+			if (value.length != len) continue;
+
+			for (int i = 0; i < len; i++) {
+				if (classFile[start + i] != value[i]) continue outer;
+			}
+
+			return true;
+		}
+
+		return false;
+	}
+
+	private static int readUnsignedShort(byte[] b, int pos) {
+		return (b[pos] & 0xff) << 8 | b[pos + 1] & 0xff;
+	}
+
+	private static int readInt(byte[] b, int pos) {
+		return (b[pos] & 0xff) << 24 | (b[pos + 1] & 0xff) << 16 | (b[pos + 2] & 0xff) << 8 | b[pos + 3] & 0xff;
+	}
+}
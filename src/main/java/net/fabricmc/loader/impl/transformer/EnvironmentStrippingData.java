@@ -36,6 +36,7 @@ public class EnvironmentStrippingData extends ClassVisitor {
 	private static final String ENVIRONMENT_DESCRIPTOR = Type.getDescriptor(Environment.class);
 	private static final String ENVIRONMENT_INTERFACE_DESCRIPTOR = Type.getDescriptor(EnvironmentInterface.class);
 	private static final String ENVIRONMENT_INTERFACES_DESCRIPTOR = Type.getDescriptor(EnvironmentInterfaces.class);
+	private static final ConstantPoolScanner ANNOTATION_SCANNER = new ConstantPoolScanner(ENVIRONMENT_DESCRIPTOR, ENVIRONMENT_INTERFACE_DESCRIPTOR, ENVIRONMENT_INTERFACES_DESCRIPTOR);
 
 	private final String envType;
 
@@ -44,6 +45,15 @@ public class EnvironmentStrippingData extends ClassVisitor {
 	private final Collection<String> stripFields = new HashSet<>();
 	private final Collection<String> stripMethods = new HashSet<>();
 
+	/**
+	 * Checks the constant pool for references to the environment annotations, which is far cheaper than visiting the class.
+	 *
+	 * @return false if the class can't have anything to strip
+	 */
+	public static boolean mayHaveAnnotations(byte[] classFile) {
+		return ANNOTATION_SCANNER.containsAny(classFile);
+	}
+
 	private class EnvironmentAnnotationVisitor extends AnnotationVisitor {
 		private final Runnable onEnvMismatch;
 
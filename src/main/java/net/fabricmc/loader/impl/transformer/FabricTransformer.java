@@ -16,6 +16,8 @@
 
 package net.fabricmc.loader.impl.transformer;
 
+import java.net.URL;
+
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
@@ -45,10 +47,18 @@ public final class FabricTransformer {
 	}
 
 	public static byte[] transform(boolean isDevelopment, EnvType envType, String name, byte[] bytes) {
-		boolean isMinecraftClass = name.startsWith("net.minecraft.") || name.startsWith("com.mojang.blaze3d.") || name.indexOf('.') < 0;
-		boolean transformAccess = isMinecraftClass && FabricLauncherBase.getLauncher().getMappingConfiguration().requiresPackageAccessHack();
-		boolean environmentStrip = !isMinecraftClass || isDevelopment;
-		boolean applyAccessWidener = isMinecraftClass && FabricLoaderImpl.INSTANCE.getAccessWidener().getTargets().contains(name);
+		return transform(isDevelopment, envType, name, bytes, null);
+	}
+
+	/**
+	 * @param source the code source the bytes were read from, null if unknown or they didn't come from a class file
+	 */
+	public static byte[] transform(boolean isDevelopment, EnvType envType, String name, byte[] bytes, URL source) {
+		boolean isMinecraftClass = isMinecraftClass(name);
+		boolean preBaked = isMinecraftClass && AccessWidenerBaker.isBaked(name, source); // access already applied to the jar
+		boolean transformAccess = isMinecraftClass && !preBaked && FabricLauncherBase.getLauncher().getMappingConfiguration().requiresPackageAccessHack();
+		boolean environmentStrip = (!isMinecraftClass || isDevelopment) && EnvironmentStrippingData.mayHaveAnnotations(bytes);
+		boolean applyAccessWidener = isMinecraftClass && !preBaked && FabricLoaderImpl.INSTANCE.getAccessWidener().getTargets().contains(name);
 
 		if (!transformAccess && !environmentStrip && !applyAccessWidener) {
 			return bytes;
@@ -70,6 +80,7 @@ public final class FabricTransformer {
 		}
 
 		if (environmentStrip) {
+			// stripping members and interfaces depends on annotations only seen after visiting them, so this needs its own pass
 			EnvironmentStrippingData stripData = new EnvironmentStrippingData(FabricLoaderImpl.ASM_VERSION, envType.toString());
 			classReader.accept(stripData, ClassReader.SKIP_CODE | ClassReader.SKIP_FRAMES);
 
@@ -90,4 +101,11 @@ public final class FabricTransformer {
 		classReader.accept(visitor, 0);
 		return classWriter.toByteArray();
 	}
+
+	/**
+	 * @param name the class name in dot notation
+	 */
+	static boolean isMinecraftClass(String name) {
+		return name.startsWith("net.minecraft.") || name.startsWith("com.mojang.blaze3d.") || name.indexOf('.') < 0;
+	}
 }
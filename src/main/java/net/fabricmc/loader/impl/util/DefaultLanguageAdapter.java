@@ -16,22 +16,30 @@
 
 package net.fabricmc.loader.impl.util;
 
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandleProxies;
 import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import net.fabricmc.loader.api.LanguageAdapter;
 import net.fabricmc.loader.api.LanguageAdapterException;
 import net.fabricmc.loader.api.ModContainer;
+import net.fabricmc.loader.impl.entrypoint.EntrypointProfiler;
 import net.fabricmc.loader.impl.launch.FabricLauncherBase;
+import net.fabricmc.loader.impl.util.log.Log;
+import net.fabricmc.loader.impl.util.log.LogCategory;
 
 public final class DefaultLanguageAdapter implements LanguageAdapter {
 	public static final DefaultLanguageAdapter INSTANCE = new DefaultLanguageAdapter();
+	private static final Method PRIVATE_LOOKUP_IN = getPrivateLookupIn();
 
 	private DefaultLanguageAdapter() { }
 
@@ -45,11 +53,14 @@ public final class DefaultLanguageAdapter implements LanguageAdapter {
 		}
 
 		Class<?> c;
+		long startTime = System.nanoTime();
 
 		try {
 			c = Class.forName(methodSplit[0], true, FabricLauncherBase.getLauncher().getTargetClassLoader());
 		} catch (ClassNotFoundException e) {
 			throw new LanguageAdapterException(e);
+		} finally {
+			EntrypointProfiler.recordClassLoad(System.nanoTime() - startTime);
 		}
 
 		if (methodSplit.length == 1) {
@@ -126,6 +137,9 @@ public final class DefaultLanguageAdapter implements LanguageAdapter {
 				throw new LanguageAdapterException(ex);
 			}
 
+			T ret = createLambda(type, c, handle, object);
+			if (ret != null) return ret;
+
 			if (object != null) {
 				handle = handle.bindTo(object);
 			}
@@ -138,4 +152,66 @@ public final class DefaultLanguageAdapter implements LanguageAdapter {
 			}
 		}
 	}
+
+	/**
+	 * Implements the interface through {@link LambdaMetafactory} like a regular method reference, calls through the
+	 * generated class can be inlined unlike the ones through a proxy.
+	 *
+	 * <p>This requires a lookup with private access to the target class, which is only available on Java 9+.</p>
+	 *
+	 * @return the instance or null if the interface or method aren't suitable, leaving it to the proxy
+	 */
+	private static <T> T createLambda(Class<T> type, Class<?> target, MethodHandle handle, Object object) {
+		if (PRIVATE_LOOKUP_IN == null) return null;
+
+		Method samMethod = findSingleAbstractMethod(type);
+		if (samMethod == null) return null;
+
+		try {
+			MethodHandles.Lookup lookup = (MethodHandles.Lookup) PRIVATE_LOOKUP_IN.invoke(null, target, MethodHandles.lookup());
+			MethodType samType = MethodType.methodType(samMethod.getReturnType(), samMethod.getParameterTypes());
+			MethodType factoryType = object != null ? MethodType.methodType(type, target) : MethodType.methodType(type);
+			CallSite callSite = LambdaMetafactory.metafactory(lookup, samMethod.getName(), factoryType, samType, handle, samType);
+
+			return type.cast(object != null ? callSite.getTarget().invoke(object) : callSite.getTarget().invoke());
+		} catch (Throwable t) {
+			Log.debug(LogCategory.ENTRYPOINT, "Can't create lambda for %s implementing %s, using a proxy", handle, type.getName(), t);
+			return null;
+		}
+	}
+
+	private static Method findSingleAbstractMethod(Class<?> type) {
+		Method ret = null;
+
+		for (Method m : type.getMethods()) {
+			if (!Modifier.isAbstract(m.getModifiers()) || isObjectMethod(m)) continue;
+
+			if (ret == null) {
+				ret = m;
+			} else if (!ret.getName().equals(m.getName())
+					|| ret.getReturnType() != m.getReturnType()
+					|| !Arrays.equals(ret.getParameterTypes(), m.getParameterTypes())) {
+				return null; // not a functional interface or needs bridges
+			}
+		}
+
+		return ret;
+	}
+
+	private static boolean isObjectMethod(Method method) {
+		try {
+			Object.class.getMethod(method.getName(), method.getParameterTypes());
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	private static Method getPrivateLookupIn() {
+		try {
+			return MethodHandles.class.getMethod("privateLookupIn", Class.class, MethodHandles.Lookup.class);
+		} catch (NoSuchMethodException e) { // Java 8
+			return null;
+		}
+	}
 }
@@ -31,12 +31,26 @@ public final class SystemProperties {
 	public static final String ADD_MODS = "fabric.addMods";
 	// file containing the class path for in-dev runtime mod remapping
 	public static final String REMAP_CLASSPATH_FILE = "fabric.remapClasspathFile";
+	// record classes loaded during startup and preload them on worker threads next time: record, transform (true, everything but mixin) or define (after preLaunch)
+	public static final String CLASS_PRELOAD = "fabric.classPreload";
+	// let classes no mixin config targets bypass Mixin's global transformation lock, mixin targets are still transformed one at a time
+	public static final String MIXIN_CONCURRENT = "fabric.mixin.concurrent";
+	// record applied mixins and transformation times per class, written as a per mod report to .fabric/mixinProfile.txt after mod init and .fabric/mixinProfile-shutdown.txt on exit
+	public static final String MIXIN_PROFILE = "fabric.mixin.profile";
+	// apply access wideners and the package access hack to a cached copy of the game jar instead of each class at load time
+	public static final String BAKE_ACCESS_WIDENERS = "fabric.bakeAccessWideners";
+	// run main/client/server entrypoints of mods with the custom value fabric-loader:parallel_init on worker threads
+	public static final String ENTRYPOINT_PARALLEL = "fabric.entrypoint.parallel";
+	// log per mod entrypoint timings at info instead of debug level and write them to .fabric/entrypointProfile.json
+	public static final String ENTRYPOINT_PROFILE = "fabric.entrypoint.profile";
 	// throw exceptions from entrypoints, discovery etc. directly instead of gathering and attaching as suppressed
 	public static final String DEBUG_THROW_DIRECTLY = "fabric.debug.throwDirectly";
 	// disables mod load order shuffling to be the same in-dev as in production
 	public static final String DEBUG_DISABLE_MOD_SHUFFLE = "fabric.debug.disableModShuffle";
 	// workaround for bad load order dependencies
 	public static final String DEBUG_LOAD_LATE = "fabric.debug.loadLate";
+	// always parse the tiny mappings instead of caching them in a memory-mapped binary format
+	public static final String DEBUG_DISABLE_BINARY_MAPPINGS = "fabric.debug.disableBinaryMappings";
 	// override the mod discovery timeout, unit in seconds, <= 0 to disable
 	public static final String DEBUG_DISCOVERY_TIMEOUT = "fabric.debug.discoveryTimeout";
 	// override the mod resolution timeout, unit in seconds, <= 0 to disable
@@ -0,0 +1,763 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.impl.util.mappings;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import net.fabricmc.mapping.tree.ClassDef;
+import net.fabricmc.mapping.tree.Descriptored;
+import net.fabricmc.mapping.tree.FieldDef;
+import net.fabricmc.mapping.tree.LocalVariableDef;
+import net.fabricmc.mapping.tree.Mapped;
+import net.fabricmc.mapping.tree.MethodDef;
+import net.fabricmc.mapping.tree.ParameterDef;
+import net.fabricmc.mapping.tree.TinyMetadata;
+import net.fabricmc.mapping.tree.TinyTree;
+
+/**
+ * {@link TinyTree} backed by a memory-mapped binary file, which is far cheaper to open than parsing tiny text and
+ * keeps the mappings off the heap.
+ *
+ * <p>The file consists of a header with the section offsets, a deduplicated UTF-8 string table, fixed-size records
+ * for classes, fields, methods, parameters and local variables referring to strings by index and, per namespace, the
+ * class records sorted by name for binary searches. Members reference the contiguous range of their children.</p>
+ *
+ * <p>Records store the names as returned by {@link Mapped#getName} and {@link Mapped#getRawName} as well as the
+ * descriptors for every namespace, so the views return exactly what the parsed tree would. Strings are decoded on
+ * first access.</p>
+ */
+public final class BinaryTinyTree implements TinyTree {
+	private static final int MAGIC = 0x46424D54; // FBMT
+	private static final int FORMAT_VERSION = 1;
+	private static final int HEADER_SIZE = 17 * 4;
+	private static final int NULL = -1;
+
+	private final ByteBuffer buffer;
+	private final int nsCount;
+	private final List<String> namespaces;
+	private final Metadata metadata;
+	private final String[] strings;
+	private final int stringOffsetsOffset;
+	private final int stringDataOffset;
+	private final int classCount;
+	private final int classesOffset;
+	private final int classIndexOffset;
+	private final int fieldsOffset;
+	private final int methodsOffset;
+	private final int paramsOffset;
+	private final int localsOffset;
+	private final Map<String, ClassDef> defaultNamespaceClassMap;
+	private final List<ClassDef> classes;
+
+	private BinaryTinyTree(ByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+
+		if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+			throw new IOException("not a binary mappings file or unsupported version");
+		}
+
+		nsCount = buffer.getInt(8);
+		int majorVersion = buffer.getInt(12);
+		int minorVersion = buffer.getInt(16);
+		int propertyCount = buffer.getInt(20);
+		int propertiesOffset = buffer.getInt(24);
+		strings = new String[buffer.getInt(28)];
+		stringOffsetsOffset = buffer.getInt(32);
+		stringDataOffset = buffer.getInt(36);
+		classCount = buffer.getInt(40);
+		classesOffset = buffer.getInt(44);
+		classIndexOffset = buffer.getInt(48);
+		fieldsOffset = buffer.getInt(52);
+		methodsOffset = buffer.getInt(56);
+		paramsOffset = buffer.getInt(60);
+		localsOffset = buffer.getInt(64);
+
+		if (localsOffset > buffer.limit() || stringDataOffset > buffer.limit()) throw new IOException("truncated binary mappings file");
+
+		String[] namespaces = new String[nsCount];
+
+		for (int i = 0; i < nsCount; i++) {
+			namespaces[i] = getString(buffer.getInt(HEADER_SIZE + i * 4));
+		}
+
+		this.namespaces = Collections.unmodifiableList(Arrays.asList(namespaces));
+
+		Map<String, String> properties = new LinkedHashMap<>();
+
+		for (int i = 0; i < propertyCount; i++) {
+			properties.put(getString(buffer.getInt(propertiesOffset + i * 8)), getString(buffer.getInt(propertiesOffset + i * 8 + 4)));
+		}
+
+		metadata = new Metadata(majorVersion, minorVersion, this.namespaces, Collections.unmodifiableMap(properties));
+		defaultNamespaceClassMap = nsCount > 0 ? new ClassMap(0) : Collections.emptyMap();
+		classes = new RecordList<ClassDef>(classCount) {
+			@Override
+			public ClassDef get(int index) {
+				checkIndex(index);
+				return new ClassView(index);
+			}
+		};
+	}
+
+	/**
+	 * Memory-maps a file written by {@link #write}.
+	 */
+	public static BinaryTinyTree open(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			// the mapping stays valid after closing the channel
+			return new BinaryTinyTree(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	@Override
+	public TinyMetadata getMetadata() {
+		return metadata;
+	}
+
+	@Override
+	public Map<String, ClassDef> getDefaultNamespaceClassMap() {
+		return defaultNamespaceClassMap;
+	}
+
+	@Override
+	public Collection<ClassDef> getClasses() {
+		return classes;
+	}
+
+	/**
+	 * Looks up a class by its name in any namespace without iterating all classes.
+	 *
+	 * @return the class or null if there is no class with that name
+	 */
+	public ClassDef getClassDef(String name, String namespace) {
+		int ns = getNamespaceIndex(namespace);
+		if (ns < 0) return null;
+
+		int index = findClass(name, ns);
+
+		return index >= 0 ? new ClassView(index) : null;
+	}
+
+	private int findClass(String name, int ns) {
+		int indexOffset = classIndexOffset + ns * classCount * 4;
+		int low = 0;
+		int high = classCount - 1;
+
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int index = buffer.getInt(indexOffset + mid * 4);
+			String current = getString(buffer.getInt(classesOffset + index * getClassSize(nsCount) + ns * 4));
+			int cmp = current != null ? current.compareTo(name) : 1; // nulls are sorted last
+
+			if (cmp < 0) {
+				low = mid + 1;
+			} else if (cmp > 0) {
+				high = mid - 1;
+			} else {
+				return index;
+			}
+		}
+
+		return -1;
+	}
+
+	private String getString(int id) {
+		if (id == NULL) return null;
+
+		String ret = strings[id];
+
+		if (ret == null) {
+			// racy but benign, Strings are immutable and safely published
+			int start = buffer.getInt(stringOffsetsOffset + id * 4);
+			int end = buffer.getInt(stringOffsetsOffset + id * 4 + 4);
+			byte[] bytes = new byte[end - start];
+			ByteBuffer src = buffer.duplicate();
+			src.position(stringDataOffset + start);
+			src.get(bytes);
+			ret = new String(bytes, StandardCharsets.UTF_8);
+			strings[id] = ret;
+		}
+
+		return ret;
+	}
+
+	private int getNamespaceIndex(String namespace) {
+		// few namespaces, a linear scan is as fast as hashing
+		for (int i = 0; i < nsCount; i++) {
+			if (namespaces.get(i).equals(namespace)) return i;
+		}
+
+		return -1;
+	}
+
+	// record layouts, all fields are ints: names, raw names, [descriptors,] comment, then type specific data
+
+	private static int getClassSize(int nsCount) {
+		return (2 * nsCount + 5) * 4; // + fieldStart, fieldCount, methodStart, methodCount
+	}
+
+	private static int getFieldSize(int nsCount) {
+		return (3 * nsCount + 1) * 4;
+	}
+
+	private static int getMethodSize(int nsCount) {
+		return (3 * nsCount + 5) * 4; // + paramStart, paramCount, localStart, localCount
+	}
+
+	private static int getParamSize(int nsCount) {
+		return (2 * nsCount + 2) * 4; // + lvIndex
+	}
+
+	private static int getLocalSize(int nsCount) {
+		return (2 * nsCount + 4) * 4; // + lvIndex, startOffset, lvtIndex
+	}
+
+	private abstract class MappedView implements Mapped {
+		final int offset;
+
+		MappedView(int offset) {
+			this.offset = offset;
+		}
+
+		@Override
+		public String getName(String namespace) {
+			int ns = getNamespaceIndex(namespace);
+
+			return ns >= 0 ? getString(buffer.getInt(offset + ns * 4)) : null;
+		}
+
+		@Override
+		public String getRawName(String namespace) {
+			int ns = getNamespaceIndex(namespace);
+
+			return ns >= 0 ? getString(buffer.getInt(offset + (nsCount + ns) * 4)) : null;
+		}
+
+		@Override
+		public String getComment() {
+			return getString(buffer.getInt(offset + getCommentPos() * 4));
+		}
+
+		abstract int getCommentPos();
+
+		int getData(int index) {
+			return buffer.getInt(offset + (getCommentPos() + 1 + index) * 4);
+		}
+
+		@Override
+		public String toString() {
+			return nsCount > 0 ? getName(namespaces.get(0)) : super.toString();
+		}
+	}
+
+	private abstract class DescriptoredView extends MappedView implements Descriptored {
+		DescriptoredView(int offset) {
+			super(offset);
+		}
+
+		@Override
+		public String getDescriptor(String namespace) {
+			int ns = getNamespaceIndex(namespace);
+
+			return ns >= 0 ? getString(buffer.getInt(offset + (2 * nsCount + ns) * 4)) : null;
+		}
+
+		@Override
+		int getCommentPos() {
+			return 3 * nsCount;
+		}
+	}
+
+	private final class ClassView extends MappedView implements ClassDef {
+		ClassView(int index) {
+			super(classesOffset + index * getClassSize(nsCount));
+		}
+
+		@Override
+		int getCommentPos() {
+			return 2 * nsCount;
+		}
+
+		@Override
+		public Collection<FieldDef> getFields() {
+			int start = getData(0);
+
+			return new RecordList<FieldDef>(getData(1)) {
+				@Override
+				public FieldDef get(int index) {
+					checkIndex(index);
+					return new FieldView(fieldsOffset + (start + index) * getFieldSize(nsCount));
+				}
+			};
+		}
+
+		@Override
+		public Collection<MethodDef> getMethods() {
+			int start = getData(2);
+
+			return new RecordList<MethodDef>(getData(3)) {
+				@Override
+				public MethodDef get(int index) {
+					checkIndex(index);
+					return new MethodView(methodsOffset + (start + index) * getMethodSize(nsCount));
+				}
+			};
+		}
+	}
+
+	private final class FieldView extends DescriptoredView implements FieldDef {
+		FieldView(int offset) {
+			super(offset);
+		}
+	}
+
+	private final class MethodView extends DescriptoredView implements MethodDef {
+		MethodView(int offset) {
+			super(offset);
+		}
+
+		@Override
+		public Collection<ParameterDef> getParameters() {
+			int start = getData(0);
+
+			return new RecordList<ParameterDef>(getData(1)) {
+				@Override
+				public ParameterDef get(int index) {
+					checkIndex(index);
+					return new ParamView(paramsOffset + (start + index) * getParamSize(nsCount));
+				}
+			};
+		}
+
+		@Override
+		public Collection<LocalVariableDef> getLocalVariables() {
+			int start = getData(2);
+
+			return new RecordList<LocalVariableDef>(getData(3)) {
+				@Override
+				public LocalVariableDef get(int index) {
+					checkIndex(index);
+					return new LocalView(localsOffset + (start + index) * getLocalSize(nsCount));
+				}
+			};
+		}
+	}
+
+	private final class ParamView extends MappedView implements ParameterDef {
+		ParamView(int offset) {
+			super(offset);
+		}
+
+		@Override
+		int getCommentPos() {
+			return 2 * nsCount;
+		}
+
+		@Override
+		public int getLocalVariableIndex() {
+			return getData(0);
+		}
+	}
+
+	private final class LocalView extends MappedView implements LocalVariableDef {
+		LocalView(int offset) {
+			super(offset);
+		}
+
+		@Override
+		int getCommentPos() {
+			return 2 * nsCount;
+		}
+
+		@Override
+		public int getLocalVariableIndex() {
+			return getData(0);
+		}
+
+		@Override
+		public int getLocalVariableStartOffset() {
+			return getData(1);
+		}
+
+		@Override
+		public int getLocalVariableTableIndex() {
+			return getData(2);
+		}
+	}
+
+	private abstract static class RecordList<T> extends AbstractList<T> {
+		private final int size;
+
+		RecordList(int size) {
+			this.size = size;
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		void checkIndex(int index) {
+			if (index < 0 || index >= size) throw new IndexOutOfBoundsException(Integer.toString(index));
+		}
+	}
+
+	/**
+	 * Read-only class map keyed by the names in one namespace, backed by the sorted class index.
+	 */
+	private final class ClassMap extends AbstractMap<String, ClassDef> {
+		private final int ns;
+
+		ClassMap(int ns) {
+			this.ns = ns;
+		}
+
+		@Override
+		public ClassDef get(Object key) {
+			if (!(key instanceof String)) return null;
+
+			int index = findClass((String) key, ns);
+
+			return index >= 0 ? new ClassView(index) : null;
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return key instanceof String && findClass((String) key, ns) >= 0;
+		}
+
+		@Override
+		public int size() {
+			return classCount;
+		}
+
+		@Override
+		public Set<Entry<String, ClassDef>> entrySet() {
+			return new AbstractSet<Entry<String, ClassDef>>() {
+				@Override
+				public int size() {
+					return classCount;
+				}
+
+				@Override
+				public Iterator<Entry<String, ClassDef>> iterator() {
+					return new Iterator<Entry<String, ClassDef>>() {
+						private int pos;
+
+						@Override
+						public boolean hasNext() {
+							return pos < classCount;
+						}
+
+						@Override
+						public Entry<String, ClassDef> next() {
+							if (pos >= classCount) throw new NoSuchElementException();
+
+							ClassView cls = new ClassView(buffer.getInt(classIndexOffset + (ns * classCount + pos++) * 4));
+
+							return new SimpleImmutableEntry<>(cls.getName(namespaces.get(ns)), cls);
+						}
+					};
+				}
+			};
+		}
+	}
+
+	private static final class Metadata implements TinyMetadata {
+		private final int majorVersion;
+		private final int minorVersion;
+		private final List<String> namespaces;
+		private final Map<String, String> properties;
+
+		Metadata(int majorVersion, int minorVersion, List<String> namespaces, Map<String, String> properties) {
+			this.majorVersion = majorVersion;
+			this.minorVersion = minorVersion;
+			this.namespaces = namespaces;
+			this.properties = properties;
+		}
+
+		@Override
+		public int getMajorVersion() {
+			return majorVersion;
+		}
+
+		@Override
+		public int getMinorVersion() {
+			return minorVersion;
+		}
+
+		@Override
+		public List<String> getNamespaces() {
+			return namespaces;
+		}
+
+		@Override
+		public Map<String, String> getProperties() {
+			return properties;
+		}
+	}
+
+	/**
+	 * Writes a tree in the binary format, replacing the file atomically.
+	 */
+	public static void write(TinyTree tree, Path file) throws IOException {
+		new Writer(tree).write(file);
+	}
+
+	private static final class Writer {
+		private final List<String> namespaces;
+		private final int nsCount;
+		private final Map<String, Integer> stringIds = new HashMap<>();
+		private final List<String> strings = new ArrayList<>();
+		private final IntList classes = new IntList();
+		private final IntList fields = new IntList();
+		private final IntList methods = new IntList();
+		private final IntList params = new IntList();
+		private final IntList locals = new IntList();
+		private final List<String[]> classNames = new ArrayList<>();
+		private final TinyMetadata metadata;
+
+		Writer(TinyTree tree) {
+			this.metadata = tree.getMetadata();
+			this.namespaces = metadata.getNamespaces();
+			this.nsCount = namespaces.size();
+
+			for (String ns : namespaces) {
+				intern(ns);
+			}
+
+			for (Map.Entry<String, String> entry : metadata.getProperties().entrySet()) {
+				intern(entry.getKey());
+				intern(entry.getValue());
+			}
+
+			for (ClassDef cls : tree.getClasses()) {
+				String[] names = new String[nsCount];
+
+				for (int i = 0; i < nsCount; i++) {
+					names[i] = cls.getName(namespaces.get(i));
+				}
+
+				classNames.add(names);
+				addNames(classes, cls);
+				classes.add(intern(cls.getComment()));
+
+				classes.add(fields.size / (getFieldSize(nsCount) / 4));
+				classes.add(cls.getFields().size());
+
+				for (FieldDef field : cls.getFields()) {
+					addNames(fields, field);
+					addDescriptors(fields, field);
+					fields.add(intern(field.getComment()));
+				}
+
+				classes.add(methods.size / (getMethodSize(nsCount) / 4));
+				classes.add(cls.getMethods().size());
+
+				for (MethodDef method : cls.getMethods()) {
+					addNames(methods, method);
+					addDescriptors(methods, method);
+					methods.add(intern(method.getComment()));
+
+					methods.add(params.size / (getParamSize(nsCount) / 4));
+					methods.add(method.getParameters().size());
+
+					for (ParameterDef param : method.getParameters()) {
+						addNames(params, param);
+						params.add(intern(param.getComment()));
+						params.add(param.getLocalVariableIndex());
+					}
+
+					methods.add(locals.size / (getLocalSize(nsCount) / 4));
+					methods.add(method.getLocalVariables().size());
+
+					for (LocalVariableDef local : method.getLocalVariables()) {
+						addNames(locals, local);
+						locals.add(intern(local.getComment()));
+						locals.add(local.getLocalVariableIndex());
+						locals.add(local.getLocalVariableStartOffset());
+						locals.add(local.getLocalVariableTableIndex());
+					}
+				}
+			}
+		}
+
+		private void addNames(IntList out, Mapped mapped) {
+			for (String ns : namespaces) {
+				out.add(intern(mapped.getName(ns)));
+			}
+
+			for (String ns : namespaces) {
+				out.add(intern(mapped.getRawName(ns)));
+			}
+		}
+
+		private void addDescriptors(IntList out, Descriptored descriptored) {
+			for (String ns : namespaces) {
+				out.add(intern(descriptored.getDescriptor(ns)));
+			}
+		}
+
+		private int intern(String s) {
+			if (s == null) return NULL;
+
+			Integer ret = stringIds.get(s);
+
+			if (ret == null) {
+				ret = strings.size();
+				strings.add(s);
+				stringIds.put(s, ret);
+			}
+
+			return ret;
+		}
+
+		void write(Path file) throws IOException {
+			byte[][] encoded = new byte[strings.size()][];
+			int stringDataSize = 0;
+
+			for (int i = 0; i < encoded.length; i++) {
+				encoded[i] = strings.get(i).getBytes(StandardCharsets.UTF_8);
+				stringDataSize += encoded[i].length;
+			}
+
+			int classCount = classNames.size();
+			Map<String, String> properties = metadata.getProperties();
+
+			int propertiesOffset = HEADER_SIZE + nsCount * 4;
+			int stringOffsetsOffset = propertiesOffset + properties.size() * 8;
+			int stringDataOffset = stringOffsetsOffset + (encoded.length + 1) * 4;
+			int classesOffset = stringDataOffset + stringDataSize;
+			int classIndexOffset = classesOffset + classes.size * 4;
+			int fieldsOffset = classIndexOffset + nsCount * classCount * 4;
+			int methodsOffset = fieldsOffset + fields.size * 4;
+			int paramsOffset = methodsOffset + methods.size * 4;
+			int localsOffset = paramsOffset + params.size * 4;
+
+			Files.createDirectories(file.toAbsolutePath().getParent());
+			Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+
+			try (DataOutputStream os = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+				os.writeInt(MAGIC);
+				os.writeInt(FORMAT_VERSION);
+				os.writeInt(nsCount);
+				os.writeInt(metadata.getMajorVersion());
+				os.writeInt(metadata.getMinorVersion());
+				os.writeInt(properties.size());
+				os.writeInt(propertiesOffset);
+				os.writeInt(encoded.length);
+				os.writeInt(stringOffsetsOffset);
+				os.writeInt(stringDataOffset);
+				os.writeInt(classCount);
+				os.writeInt(classesOffset);
+				os.writeInt(classIndexOffset);
+				os.writeInt(fieldsOffset);
+				os.writeInt(methodsOffset);
+				os.writeInt(paramsOffset);
+				os.writeInt(localsOffset);
+
+				for (String ns : namespaces) {
+					os.writeInt(intern(ns));
+				}
+
+				for (Map.Entry<String, String> entry : properties.entrySet()) {
+					os.writeInt(intern(entry.getKey()));
+					os.writeInt(intern(entry.getValue()));
+				}
+
+				int pos = 0;
+
+				for (byte[] bytes : encoded) {
+					os.writeInt(pos);
+					pos += bytes.length;
+				}
+
+				os.writeInt(pos);
+
+				for (byte[] bytes : encoded) {
+					os.write(bytes);
+				}
+
+				classes.writeTo(os);
+
+				for (int ns = 0; ns < nsCount; ns++) {
+					final int nsIndex = ns;
+					Integer[] order = new Integer[classCount];
+
+					for (int i = 0; i < classCount; i++) {
+						order[i] = i;
+					}
+
+					// nulls can't be looked up, sort them last
+					Arrays.sort(order, Comparator.comparing((Integer i) -> classNames.get(i)[nsIndex], Comparator.nullsLast(Comparator.naturalOrder())));
+
+					for (Integer index : order) {
+						os.writeInt(index);
+					}
+				}
+
+				fields.writeTo(os);
+				methods.writeTo(os);
+				params.writeTo(os);
+				locals.writeTo(os);
+			}
+
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private static final class IntList {
+		int[] data = new int[1024];
+		int size;
+
+		void add(int value) {
+			if (size == data.length) data = Arrays.copyOf(data, size * 2);
+
+			data[size++] = value;
+		}
+
+		void writeTo(DataOutputStream os) throws IOException {
+			for (int i = 0; i < size; i++) {
+				os.writeInt(data[i]);
+			}
+		}
+	}
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.impl.util.mappings;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.objectweb.asm.ClassReader;
+
+import net.fabricmc.loader.impl.FabricLoaderImpl;
+import net.fabricmc.loader.impl.launch.FabricLauncherBase;
+import net.fabricmc.loader.impl.util.log.Log;
+import net.fabricmc.loader.impl.util.log.LogCategory;
+
+/**
+ * Super class and interface names of classes by internal name, for walking class hierarchies without Mixin's
+ * {@code ClassInfo}, which has to read and fully parse every class it visits.
+ *
+ * <p>The game jar is indexed in one go and the result is cached on disk, keyed by a digest of the jar's path, size and
+ * modification time. Other classes, e.g. from mods, are indexed on demand by only reading their class file header.
+ * Classes that can't be found aren't remembered, they may still get defined later, e.g. by Mixin.</p>
+ */
+public final class ClassHierarchyIndex {
+	private static final int FORMAT_VERSION = 1;
+	private static final String CACHE_DIR_NAME = "classHierarchy"; // relative to .fabric
+
+	private final Map<String, String[]> gameClasses;
+	private final Map<String, String[]> otherClasses = new ConcurrentHashMap<>();
+
+	private ClassHierarchyIndex(Map<String, String[]> gameClasses) {
+		this.gameClasses = gameClasses;
+	}
+
+	public static ClassHierarchyIndex create() {
+		Path gameJar = FabricLauncherBase.minecraftJar;
+		Map<String, String[]> gameClasses = null;
+
+		if (gameJar != null && Files.isRegularFile(gameJar)) {
+			try {
+				gameClasses = loadOrBuild(gameJar);
+			} catch (IOException e) {
+				Log.warn(LogCategory.MIXIN, "Can't index class hierarchy of %s", gameJar, e);
+			}
+		}
+
+		return new ClassHierarchyIndex(gameClasses != null ? gameClasses : new HashMap<>());
+	}
+
+	/**
+	 * Gets the direct super types of a class.
+	 *
+	 * @param name the internal name of the class
+	 * @return the super class name (null for java/lang/Object) followed by the interface names, or null if the class
+	 * can't be found
+	 */
+	public String[] getSuperTypes(String name) {
+		String[] ret = gameClasses.get(name);
+		if (ret != null) return ret;
+
+		ret = otherClasses.get(name);
+
+		if (ret == null) {
+			ret = readSuperTypes(name);
+			if (ret != null) otherClasses.put(name, ret);
+		}
+
+		return ret;
+	}
+
+	private static String[] readSuperTypes(String name) {
+		try {
+			byte[] bytes = FabricLauncherBase.getLauncher().getClassByteArray(name.replace('/', '.'), false);
+
+			return bytes != null ? getSuperTypes(new ClassReader(bytes)) : null;
+		} catch (IOException | RuntimeException e) {
+			Log.debug(LogCategory.MIXIN, "Can't read class header of %s", name, e);
+			return null;
+		}
+	}
+
+	private static String[] getSuperTypes(ClassReader reader) {
+		// only the header gets read, ClassReader doesn't parse anything else until accept is called
+		String[] interfaces = reader.getInterfaces();
+		String[] ret = new String[interfaces.length + 1];
+		ret[0] = reader.getSuperName();
+		System.arraycopy(interfaces, 0, ret, 1, interfaces.length);
+
+		return ret;
+	}
+
+	private static Map<String, String[]> loadOrBuild(Path gameJar) throws IOException {
+		Path cacheFile = FabricLoaderImpl.INSTANCE.getGameDir()
+				.resolve(FabricLoaderImpl.CACHE_DIR_NAME)
+				.resolve(CACHE_DIR_NAME)
+				.resolve(getCacheKey(gameJar) + ".bin");
+
+		try {
+			return read(cacheFile);
+		} catch (NoSuchFileException e) {
+			// not built yet
+		} catch (IOException e) {
+			Log.debug(LogCategory.MIXIN, "Can't read class hierarchy cache %s, rebuilding", cacheFile, e);
+		}
+
+		long startTime = System.nanoTime();
+		Map<String, String[]> ret = build(gameJar);
+		Log.debug(LogCategory.MIXIN, "Indexed class hierarchy of %d classes in %.1f ms", ret.size(), (System.nanoTime() - startTime) * 1e-6);
+
+		try {
+			write(ret, cacheFile);
+		} catch (IOException e) {
+			Log.debug(LogCategory.MIXIN, "Can't write class hierarchy cache %s", cacheFile, e);
+		}
+
+		return ret;
+	}
+
+	private static String getCacheKey(Path jar) throws IOException {
+		String key = jar.toAbsolutePath().normalize() + ";" + Files.size(jar) + ";" + Files.getLastModifiedTime(jar).toMillis();
+		byte[] hash;
+
+		try {
+			hash = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+
+		StringBuilder sb = new StringBuilder(jar.getFileName().toString()).append('-');
+
+		for (int i = 0; i < 16; i++) {
+			sb.append(Character.forDigit((hash[i] >> 4) & 0xf, 16));
+			sb.append(Character.forDigit(hash[i] & 0xf, 16));
+		}
+
+		return sb.toString();
+	}
+
+	private static Map<String, String[]> build(Path jar) throws IOException {
+		Map<String, String[]> ret = new HashMap<>();
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream(16384);
+		byte[] readBuffer = new byte[8192];
+
+		try (ZipFile zf = new ZipFile(jar.toFile())) {
+			for (Enumeration<? extends ZipEntry> e = zf.entries(); e.hasMoreElements(); ) {
+				ZipEntry entry = e.nextElement();
+				if (!entry.getName().endsWith(".class") || entry.getName().startsWith("META-INF/")) continue;
+
+				buffer.reset();
+
+				try (InputStream is = zf.getInputStream(entry)) {
+					int len;
+
+					while ((len = is.read(readBuffer)) > 0) {
+						buffer.write(readBuffer, 0, len);
+					}
+				}
+
+				ClassReader reader = new ClassReader(buffer.toByteArray());
+				ret.put(reader.getClassName(), getSuperTypes(reader));
+			}
+		}
+
+		return ret;
+	}
+
+	private static Map<String, String[]> read(Path file) throws IOException {
+		try (DataInputStream is = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (is.readInt() != FORMAT_VERSION) throw new IOException("unsupported format version");
+
+			int count = is.readInt();
+			Map<String, String[]> ret = new HashMap<>(count * 4 / 3 + 1);
+
+			for (int i = 0; i < count; i++) {
+				String name = is.readUTF();
+				String[] superTypes = new String[is.readUnsignedShort() + 1];
+				String superName = is.readUTF();
+				superTypes[0] = superName.isEmpty() ? null : superName;
+
+				for (int j = 1; j < superTypes.length; j++) {
+					superTypes[j] = is.readUTF();
+				}
+
+				ret.put(name, superTypes);
+			}
+
+			return ret;
+		}
+	}
+
+	private static void write(Map<String, String[]> index, Path file) throws IOException {
+		Files.createDirectories(file.getParent());
+		Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+
+		try (DataOutputStream os = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+			os.writeInt(FORMAT_VERSION);
+			os.writeInt(index.size());
+
+			for (Map.Entry<String, String[]> entry : index.entrySet()) {
+				String[] superTypes = entry.getValue();
+
+				os.writeUTF(entry.getKey());
+				os.writeShort(superTypes.length - 1);
+				os.writeUTF(superTypes[0] != null ? superTypes[0] : "");
+
+				for (int j = 1; j < superTypes.length; j++) {
+					os.writeUTF(superTypes[j]);
+				}
+			}
+		}
+
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+	}
+}
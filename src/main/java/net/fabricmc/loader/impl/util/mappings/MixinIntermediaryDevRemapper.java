@@ -23,6 +23,9 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.spongepowered.asm.mixin.transformer.ClassInfo;
 
@@ -31,45 +34,121 @@ import net.fabricmc.mapping.tree.Descriptored;
 import net.fabricmc.mapping.tree.TinyTree;
 import net.fabricmc.mapping.util.MixinRemapper;
 
+/**
+ * Mixin remapper for development environments, mapping intermediary names used by refmaps to named.
+ *
+ * <p>The name based lookup tables are built on a background thread while Mixin bootstraps, lookups wait for them if
+ * needed. Lookups by owner, name and descriptor are memoized since Mixin repeats them for every mixin targeting the
+ * same members. Memoizing only starts once the indexer finished, and misses where part of the owner's hierarchy
+ * couldn't be resolved are never memoized, the missing classes may still get defined later.</p>
+ */
 public class MixinIntermediaryDevRemapper extends MixinRemapper {
 	private static final String ambiguousName = "<ambiguous>"; // dummy value for ambiguous mappings - needs querying with additional owner and/or desc info
+	private static final String NULL_KEY = ""; // stand-in for null owners and descriptors in the result caches, never a valid name
 
-	private final Set<String> allPossibleClassNames = new HashSet<>();
-	private final Map<String, String> nameFieldLookup = new HashMap<>();
-	private final Map<String, String> nameMethodLookup = new HashMap<>();
-	private final Map<String, String> nameDescFieldLookup = new HashMap<>();
-	private final Map<String, String> nameDescMethodLookup = new HashMap<>();
+	private final CompletableFuture<Lookups> lookups;
+	private final ResultCache methodResults = new ResultCache();
+	private final ResultCache fieldResults = new ResultCache();
+	private volatile ClassHierarchyIndex hierarchy;
 
-	public MixinIntermediaryDevRemapper(TinyTree mappings, String from, String to) {
-		super(mappings, from, to);
+	private static final class Lookups {
+		final Set<String> allPossibleClassNames = new HashSet<>();
+		final MemberLookup fields = new MemberLookup();
+		final MemberLookup methods = new MemberLookup();
 
-		for (ClassDef classDef : mappings.getClasses()) {
-			allPossibleClassNames.add(classDef.getName(from));
-			allPossibleClassNames.add(classDef.getName(to));
+		Lookups(TinyTree mappings, String from, String to) {
+			for (ClassDef classDef : mappings.getClasses()) {
+				allPossibleClassNames.add(classDef.getName(from));
+				allPossibleClassNames.add(classDef.getName(to));
 
-			putMemberInLookup(from, to, classDef.getFields(), nameFieldLookup, nameDescFieldLookup);
-			putMemberInLookup(from, to, classDef.getMethods(), nameMethodLookup, nameDescMethodLookup);
+				fields.putAll(from, to, classDef.getFields());
+				methods.putAll(from, to, classDef.getMethods());
+			}
 		}
 	}
 
-	private <T extends Descriptored> void putMemberInLookup(String from, String to, Collection<T> descriptored, Map<String, String> nameMap, Map<String, String> nameDescMap) {
-		for (T field : descriptored) {
-			String nameFrom = field.getName(from);
-			String descFrom = field.getDescriptor(from);
-			String nameTo = field.getName(to);
+	/**
+	 * Member names keyed by name and by name + descriptor in nested maps, so lookups don't need to build keys.
+	 */
+	private static final class MemberLookup {
+		final Map<String, String> byName = new HashMap<>();
+		final Map<String, Map<String, String>> byNameDesc = new HashMap<>();
+
+		<T extends Descriptored> void putAll(String from, String to, Collection<T> descriptored) {
+			for (T member : descriptored) {
+				String nameFrom = member.getName(from);
+				String descFrom = member.getDescriptor(from);
+				String nameTo = member.getName(to);
 
-			String prev = nameMap.putIfAbsent(nameFrom, nameTo);
+				byName.putIfAbsent(nameFrom, nameTo);
 
-			if (prev != null && prev != ambiguousName && !prev.equals(nameTo)) {
-				nameDescMap.put(nameFrom, ambiguousName);
+				Map<String, String> descMap = byNameDesc.computeIfAbsent(nameFrom, ignore -> new HashMap<>(2));
+				String prev = descMap.putIfAbsent(descFrom, nameTo);
+
+				if (prev != null && prev != ambiguousName && !prev.equals(nameTo)) {
+					descMap.put(descFrom, ambiguousName);
+				}
 			}
+		}
 
-			String key = getNameDescKey(nameFrom, descFrom);
-			prev = nameDescMap.putIfAbsent(key, nameTo);
+		String get(String name, String desc) {
+			Map<String, String> descMap = byNameDesc.get(name);
+
+			return descMap != null ? descMap.get(desc) : null;
+		}
+	}
 
-			if (prev != null && prev != ambiguousName && !prev.equals(nameTo)) {
-				nameDescMap.put(key, ambiguousName);
+	/**
+	 * Memoized lookup results by owner, name and descriptor.
+	 */
+	private static final class ResultCache {
+		private final Map<String, Map<String, Map<String, String>>> results = new ConcurrentHashMap<>();
+
+		String get(String owner, String name, String desc) {
+			Map<String, Map<String, String>> names = results.get(owner != null ? owner : NULL_KEY);
+			if (names == null) return null;
+
+			Map<String, String> descs = names.get(name);
+
+			return descs != null ? descs.get(desc != null ? desc : NULL_KEY) : null;
+		}
+
+		String put(String owner, String name, String desc, String result) {
+			results.computeIfAbsent(owner != null ? owner : NULL_KEY, ignore -> new ConcurrentHashMap<>())
+					.computeIfAbsent(name, ignore -> new ConcurrentHashMap<>())
+					.put(desc != null ? desc : NULL_KEY, result);
+
+			return result;
+		}
+	}
+
+	public MixinIntermediaryDevRemapper(TinyTree mappings, String from, String to) {
+		super(mappings, from, to);
+
+		CompletableFuture<Lookups> future = new CompletableFuture<>();
+		lookups = future;
+
+		Thread thread = new Thread(() -> {
+			try {
+				future.complete(new Lookups(mappings, from, to));
+			} catch (Throwable t) {
+				future.completeExceptionally(t);
+				return;
 			}
+
+			getHierarchy(); // likely needed too, build it while Mixin is still busy
+		}, "Mixin remapper indexer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private Lookups getLookups() {
+		try {
+			return lookups.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+			if (e.getCause() instanceof Error) throw (Error) e.getCause();
+			throw e;
 		}
 	}
 
@@ -101,14 +180,35 @@ public class MixinIntermediaryDevRemapper extends MixinRemapper {
 
 	@Override
 	public String mapMethodName(String owner, String name, String desc) {
+		String ret = getMethodName(owner, name, desc);
+
+		return ret != null ? ret : name;
+	}
+
+	/**
+	 * @return the mapped name, or null if there's none but part of the owner's hierarchy couldn't be resolved
+	 */
+	private String getMethodName(String owner, String name, String desc) {
+		String ret = methodResults.get(owner, name, desc);
+		if (ret != null) return ret;
+
+		boolean indexed = isIndexed();
+		ret = mapMethodName0(owner, name, desc); // not computeIfAbsent, the lookup recurses
+
+		return indexed && ret != null ? methodResults.put(owner, name, desc, ret) : ret;
+	}
+
+	private String mapMethodName0(String owner, String name, String desc) {
+		Lookups lookups = getLookups();
+
 		// handle unambiguous values early
-		if (owner == null || allPossibleClassNames.contains(owner)) {
+		if (owner == null || lookups.allPossibleClassNames.contains(owner)) {
 			String newName;
 
 			if (desc == null) {
-				newName = nameMethodLookup.get(name);
+				newName = lookups.methods.byName.get(name);
 			} else {
-				newName = nameDescMethodLookup.get(getNameDescKey(name, desc));
+				newName = lookups.methods.get(name, desc);
 			}
 
 			if (newName != null) {
@@ -128,7 +228,7 @@ public class MixinIntermediaryDevRemapper extends MixinRemapper {
 				String unmapDesc = unmapDesc(desc);
 
 				if (!unmapOwner.equals(owner) || !unmapDesc.equals(desc)) {
-					return mapMethodName(unmapOwner, name, unmapDesc);
+					return getMethodName(unmapOwner, name, unmapDesc);
 				} else {
 					// take advantage of the fact allPossibleClassNames
 					// and nameDescLookup cover all sets; if none are present,
@@ -138,8 +238,62 @@ public class MixinIntermediaryDevRemapper extends MixinRemapper {
 			}
 		}
 
+		String[] ownerSuperTypes = getHierarchy().getSuperTypes(owner);
+
+		if (ownerSuperTypes == null) {
+			return mapMethodNameClassInfo(owner, name, desc);
+		}
+
+		Queue<String> queue = new ArrayDeque<>();
+		Set<String> queued = new HashSet<>();
+		queue.add(owner);
+		queued.add(owner);
+		boolean unresolved = false;
+
+		while (!queue.isEmpty()) {
+			String cls = queue.remove();
+			String s;
+
+			if (!(s = mapMethodNameInner(unmap(cls), name, desc)).equals(name)) {
+				return s;
+			}
+
+			String[] superTypes = getHierarchy().getSuperTypes(cls);
+
+			if (superTypes == null) {
+				ClassInfo c = ClassInfo.forName(cls); // not in the index (e.g. generated), let Mixin try
+
+				if (c == null) {
+					unresolved = true;
+					continue;
+				}
+
+				superTypes = new String[c.getInterfaces().size() + 1];
+				superTypes[0] = c.getSuperName();
+				int i = 1;
+
+				for (String itf : c.getInterfaces()) {
+					superTypes[i++] = itf;
+				}
+			}
+
+			for (String superType : superTypes) {
+				if (superType != null && !superType.startsWith("java/") && queued.add(superType)) {
+					queue.add(superType);
+				}
+			}
+		}
+
+		return unresolved ? null : name;
+	}
+
+	private String mapMethodNameClassInfo(String owner, String name, String desc) {
+		ClassInfo info = ClassInfo.forName(owner);
+		if (info == null) return null;
+
 		Queue<ClassInfo> classInfos = new ArrayDeque<>();
-		classInfos.add(ClassInfo.forName(owner));
+		classInfos.add(info);
+		boolean unresolved = false;
 
 		while (!classInfos.isEmpty()) {
 			ClassInfo c = classInfos.remove();
@@ -155,6 +309,8 @@ public class MixinIntermediaryDevRemapper extends MixinRemapper {
 
 				if (cSuper != null) {
 					classInfos.add(cSuper);
+				} else {
+					unresolved = true;
 				}
 			}
 
@@ -167,18 +323,41 @@ public class MixinIntermediaryDevRemapper extends MixinRemapper {
 
 				if (cItf != null) {
 					classInfos.add(cItf);
+				} else {
+					unresolved = true;
 				}
 			}
 		}
 
-		return name;
+		return unresolved ? null : name;
 	}
 
 	@Override
 	public String mapFieldName(String owner, String name, String desc) {
+		String ret = getFieldName(owner, name, desc);
+
+		return ret != null ? ret : name;
+	}
+
+	/**
+	 * @return the mapped name, or null if there's none but part of the owner's hierarchy couldn't be resolved
+	 */
+	private String getFieldName(String owner, String name, String desc) {
+		String ret = fieldResults.get(owner, name, desc);
+		if (ret != null) return ret;
+
+		boolean indexed = isIndexed();
+		ret = mapFieldName0(owner, name, desc); // not computeIfAbsent, the lookup recurses
+
+		return indexed && ret != null ? fieldResults.put(owner, name, desc, ret) : ret;
+	}
+
+	private String mapFieldName0(String owner, String name, String desc) {
+		Lookups lookups = getLookups();
+
 		// handle unambiguous values early
-		if (owner == null || allPossibleClassNames.contains(owner)) {
-			String newName = nameDescFieldLookup.get(getNameDescKey(name, desc));
+		if (owner == null || lookups.allPossibleClassNames.contains(owner)) {
+			String newName = lookups.fields.get(name, desc);
 
 			if (newName != null) {
 				if (newName == ambiguousName) {
@@ -197,7 +376,7 @@ public class MixinIntermediaryDevRemapper extends MixinRemapper {
 				String unmapDesc = unmapDesc(desc);
 
 				if (!unmapOwner.equals(owner) || !unmapDesc.equals(desc)) {
-					return mapFieldName(unmapOwner, name, unmapDesc);
+					return getFieldName(unmapOwner, name, unmapDesc);
 				} else {
 					// take advantage of the fact allPossibleClassNames
 					// and nameDescLookup cover all sets; if none are present,
@@ -207,7 +386,24 @@ public class MixinIntermediaryDevRemapper extends MixinRemapper {
 			}
 		}
 
-		ClassInfo c = ClassInfo.forName(map(owner));
+		String cls = map(owner);
+		String[] superTypes;
+
+		while ((superTypes = getHierarchy().getSuperTypes(cls)) != null) {
+			String s = mapFieldNameInner(unmap(cls), name, desc);
+
+			if (!s.equals(name)) {
+				return s;
+			}
+
+			if (superTypes[0] == null || superTypes[0].startsWith("java/")) {
+				return name;
+			}
+
+			cls = superTypes[0];
+		}
+
+		ClassInfo c = ClassInfo.forName(cls);
 
 		while (c != null) {
 			String nextOwner = unmap(c.getName());
@@ -218,16 +414,32 @@ public class MixinIntermediaryDevRemapper extends MixinRemapper {
 			}
 
 			if (c.getSuperName().startsWith("java/")) {
-				break;
+				return name;
 			}
 
 			c = c.getSuperClass();
 		}
 
-		return name;
+		return null; // ran into a class that can't be resolved
 	}
 
-	private static String getNameDescKey(String name, String descriptor) {
-		return name+ ";;" + descriptor;
+	/**
+	 * Checks whether the background indexer finished, nothing is memoized before.
+	 */
+	private boolean isIndexed() {
+		return lookups.isDone() && hierarchy != null;
+	}
+
+	private ClassHierarchyIndex getHierarchy() {
+		ClassHierarchyIndex ret = hierarchy;
+
+		if (ret == null) {
+			synchronized (this) {
+				ret = hierarchy;
+				if (ret == null) hierarchy = ret = ClassHierarchyIndex.create();
+			}
+		}
+
+		return ret;
 	}
 }
@@ -16,10 +16,149 @@
 
 package org.spongepowered.asm.mixin.transformer;
 
+import java.lang.reflect.Field;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.spongepowered.asm.mixin.MixinEnvironment;
+import org.spongepowered.asm.mixin.Mixins;
+import org.spongepowered.asm.mixin.extensibility.IMixinConfig;
+
+import net.fabricmc.loader.impl.launch.knot.MixinApplicationProfiler;
+import net.fabricmc.loader.impl.util.SystemProperties;
+import net.fabricmc.loader.impl.util.log.Log;
+import net.fabricmc.loader.impl.util.log.LogCategory;
+
+/**
+ * Entry point into Mixin's transformer for Knot.
+ *
+ * <p>Mixin applies mixins under a single global lock. With {@link SystemProperties#MIXIN_CONCURRENT} set, classes no
+ * mixin config targets are passed through without entering Mixin, so they can load in parallel. Classes that do have
+ * mixins are still transformed one at a time: Mixin's processor, its config state and {@link ClassInfo} aren't safe
+ * for concurrent use, so there is no parallel path for them.</p>
+ */
 public class FabricMixinTransformerProxy {
+	private static final boolean CONCURRENT = Boolean.getBoolean(SystemProperties.MIXIN_CONCURRENT);
+
 	private final MixinTransformer transformer = new MixinTransformer();
+	/** The monitor Mixin applies mixins and prepares configs under, null if the passthrough is disabled. */
+	private final Object processorLock = CONCURRENT ? getProcessor(transformer) : null;
+	private volatile TargetSnapshot targets;
 
 	public byte[] transformClassBytes(String name, String transformedName, byte[] basicClass) {
+		MixinApplicationProfiler profiler = MixinApplicationProfiler.get();
+		if (profiler == null) return transformClassBytes0(name, transformedName, basicClass);
+
+		byte[] ret = null;
+		profiler.beginTransformation(transformedName, basicClass);
+
+		try {
+			ret = transformClassBytes0(name, transformedName, basicClass);
+		} finally {
+			profiler.endTransformation(ret);
+		}
+
+		return ret;
+	}
+
+	private byte[] transformClassBytes0(String name, String transformedName, byte[] basicClass) {
+		if (processorLock == null) {
+			return transformer.transformClassBytes(name, transformedName, basicClass);
+		}
+
+		// Mixin serializes all transformations, let classes it has nothing to do with bypass it
+		if (basicClass != null && isUntargeted(transformedName)) {
+			return basicClass;
+		}
+
 		return transformer.transformClassBytes(name, transformedName, basicClass);
 	}
+
+	/**
+	 * Checks whether Mixin is known to leave a class alone: no prepared config targets it and it isn't in a mixin
+	 * package.
+	 *
+	 * <p>This is false for every class until all configs got prepared, which happens on the first transformation.</p>
+	 *
+	 * @param name the class name in dot notation
+	 */
+	private boolean isUntargeted(String name) {
+		TargetSnapshot targets = getTargets();
+
+		return targets != null && !targets.mayTransform(name);
+	}
+
+	private TargetSnapshot getTargets() {
+		TargetSnapshot ret = targets;
+
+		if (ret == null || !ret.isCurrent()) {
+			// configs get selected and prepared on the first transformation after they were added, under the same lock
+			synchronized (processorLock) {
+				ret = TargetSnapshot.capture();
+			}
+
+			targets = ret;
+		}
+
+		return ret;
+	}
+
+	private static Object getProcessor(MixinTransformer transformer) {
+		try {
+			Field field = MixinTransformer.class.getDeclaredField("processor");
+			field.setAccessible(true);
+
+			return field.get(transformer); // MixinProcessor.applyMixins is synchronized on the processor
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			Log.warn(LogCategory.MIXIN, "Can't find Mixin's processor, %s has no effect", SystemProperties.MIXIN_CONCURRENT, e);
+			return null;
+		}
+	}
+
+	/**
+	 * The classes Mixin may modify: the targets of all prepared configs and everything in their mixin packages.
+	 */
+	private static final class TargetSnapshot {
+		private final MixinEnvironment environment;
+		private final int configCount;
+		private final Set<String> targets;
+		private final String[] mixinPackages;
+
+		private TargetSnapshot(MixinEnvironment environment, int configCount, Set<String> targets, String[] mixinPackages) {
+			this.environment = environment;
+			this.configCount = configCount;
+			this.targets = targets;
+			this.mixinPackages = mixinPackages;
+		}
+
+		static TargetSnapshot capture() {
+			if (Mixins.getUnvisitedCount() > 0) return null; // some configs aren't prepared yet, their targets are unknown
+
+			Set<Config> configs = Mixins.getConfigs();
+			Set<String> targets = new HashSet<>();
+			Set<String> packages = new HashSet<>();
+
+			for (Config config : configs) {
+				IMixinConfig mixinConfig = config.getConfig();
+				targets.addAll(mixinConfig.getTargets());
+				packages.add(mixinConfig.getMixinPackage());
+			}
+
+			return new TargetSnapshot(MixinEnvironment.getCurrentEnvironment(), configs.size(), targets, packages.toArray(new String[0]));
+		}
+
+		boolean isCurrent() {
+			return environment == MixinEnvironment.getCurrentEnvironment() && configCount == Mixins.getConfigs().size();
+		}
+
+		boolean mayTransform(String name) {
+			if (targets.contains(name)) return true;
+
+			for (String pkg : mixinPackages) {
+				if (name.startsWith(pkg)) return true;
+			}
+
+			return false;
+		}
+	}
 }
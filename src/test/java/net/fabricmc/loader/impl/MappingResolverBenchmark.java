@@ -0,0 +1,164 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.impl;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import net.fabricmc.loader.impl.util.mappings.BinaryTinyTreeTests;
+import net.fabricmc.mapping.tree.ClassDef;
+import net.fabricmc.mapping.tree.MethodDef;
+import net.fabricmc.mapping.tree.TinyMappingFactory;
+import net.fabricmc.mapping.tree.TinyTree;
+
+/**
+ * Measures lookup latency and heap footprint of {@link MappingResolverImpl}, run it manually.
+ *
+ * <p>Usage: {@code MappingResolverBenchmark [mappings.tiny]}. Without an argument synthetic mappings of a size similar
+ * to the game's are used. Both the parsed tree and its binary copy are measured, the numbers are only comparable
+ * between runs on the same machine.</p>
+ */
+public final class MappingResolverBenchmark {
+	private static final int CLASSES = 8000;
+	private static final int FIELDS = 8;
+	private static final int METHODS = 16;
+	private static final int WARMUP_ROUNDS = 5;
+	private static final int ROUNDS = 10;
+
+	public static void main(String[] args) throws IOException {
+		TinyTree tree;
+
+		if (args.length > 0) {
+			try (BufferedReader reader = Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+				tree = TinyMappingFactory.loadWithDetection(reader);
+			}
+		} else {
+			tree = BinaryTinyTreeTests.parse(generate());
+		}
+
+		Path dir = Files.createTempDirectory("fabric-mappings");
+		TinyTree binary = BinaryTinyTreeTests.writeAndOpen(tree, dir);
+
+		List<String> namespaces = tree.getMetadata().getNamespaces();
+		String from = namespaces.contains("intermediary") ? "intermediary" : namespaces.get(0);
+		String to = namespaces.get(namespaces.size() - 1);
+		List<String[]> queries = getQueries(tree, from);
+
+		System.out.printf("%d classes, %d method lookups from %s to %s%n", tree.getClasses().size(), queries.size(), from, to);
+
+		run("parsed", tree, from, to, queries);
+		run("binary", binary, from, to, queries);
+	}
+
+	private static void run(String label, TinyTree mappings, String from, String to, List<String[]> queries) {
+		long heapBefore = getUsedHeap();
+
+		long time = System.nanoTime();
+		MappingResolverImpl resolver = new MappingResolverImpl(() -> mappings, to);
+		resolver.mapClassName(from, queries.get(0)[0]);
+		long firstLookup = System.nanoTime() - time;
+
+		// the first pass also builds the tables of every class it touches
+		time = System.nanoTime();
+		int sink = lookupAll(resolver, from, queries);
+		long coldPass = System.nanoTime() - time;
+
+		for (int i = 0; i < WARMUP_ROUNDS; i++) {
+			sink += lookupAll(resolver, from, queries);
+		}
+
+		time = System.nanoTime();
+
+		for (int i = 0; i < ROUNDS; i++) {
+			sink += lookupAll(resolver, from, queries);
+		}
+
+		double nsPerLookup = (double) (System.nanoTime() - time) / ((long) ROUNDS * queries.size());
+		long footprint = getUsedHeap() - heapBefore;
+		sink += resolver.getNamespaces().size(); // keeps the resolver reachable until the heap got measured
+
+		System.out.printf("%s: first lookup %.2f ms, cold pass %.1f ms, %.1f ns/lookup, ~%d KiB retained by the resolver (checksum %d)%n",
+				label, firstLookup * 1e-6, coldPass * 1e-6, nsPerLookup, footprint / 1024, sink);
+	}
+
+	private static int lookupAll(MappingResolverImpl resolver, String namespace, List<String[]> queries) {
+		int ret = 0;
+
+		for (String[] query : queries) {
+			ret += resolver.mapMethodName(namespace, query[0], query[1], query[2]).length();
+		}
+
+		return ret;
+	}
+
+	/**
+	 * Gets all methods as owner, name and descriptor in the given namespace, in a fixed random order.
+	 */
+	private static List<String[]> getQueries(TinyTree tree, String namespace) {
+		List<String[]> ret = new ArrayList<>();
+
+		for (ClassDef cls : tree.getClasses()) {
+			String owner = cls.getName(namespace).replace('/', '.');
+
+			for (MethodDef method : cls.getMethods()) {
+				ret.add(new String[] { owner, method.getName(namespace), method.getDescriptor(namespace) });
+			}
+		}
+
+		Collections.shuffle(ret, new Random(0));
+
+		return ret;
+	}
+
+	private static String generate() {
+		StringBuilder ret = new StringBuilder("tiny\t2\t0\tofficial\tintermediary\tnamed\n");
+		int field = 0;
+		int method = 0;
+
+		for (int i = 0; i < CLASSES; i++) {
+			ret.append(String.format("c\tc%d\tnet/minecraft/class_%d\tnet/minecraft/Class%d\n", i, i, i));
+
+			for (int j = 0; j < FIELDS; j++, field++) {
+				ret.append(String.format("\tf\tI\tf%d\tfield_%d\tfield%d\n", j, field, field));
+			}
+
+			for (int j = 0; j < METHODS; j++, method++) {
+				ret.append(String.format("\tm\t(Lc%d;)V\tm%d\tmethod_%d\tmethod%d\n", (i + j) % CLASSES, j % (METHODS / 2), method, method));
+			}
+		}
+
+		return ret.toString();
+	}
+
+	private static long getUsedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
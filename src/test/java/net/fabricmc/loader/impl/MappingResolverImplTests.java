@@ -0,0 +1,191 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.impl;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import net.fabricmc.loader.impl.util.mappings.BinaryTinyTreeTests;
+import net.fabricmc.mapping.tree.TinyTree;
+
+final class MappingResolverImplTests {
+	private static final int MEMBER_COUNT = 100;
+
+	@TempDir
+	Path tempDir;
+
+	/**
+	 * Resolvers over the parsed tree and over its binary copy, which has its own class index.
+	 */
+	private List<MappingResolverImpl> resolvers;
+
+	@BeforeEach
+	public void setup() throws IOException {
+		StringBuilder mappings = new StringBuilder(BinaryTinyTreeTests.MAPPINGS);
+		mappings.append("c\td\tnet/minecraft/class_5\tnet/minecraft/Large\n");
+
+		// enough overloaded members for the binary search to take several steps
+		for (int i = 0; i < MEMBER_COUNT; i++) {
+			mappings.append(String.format("\tf\tI\tf%d\tfield_%d\tfieldName%d\n", i, 100 + i, i));
+			mappings.append(String.format("\tm\t()V\tm%d\tmethod_%d\tmethodName%d\n", i, 100 + i, i));
+			mappings.append(String.format("\tm\t(I)V\tm%d\tmethod_%d\toverloadName%d\n", i, 200 + i, i));
+		}
+
+		TinyTree tree = BinaryTinyTreeTests.parse(mappings.toString());
+		TinyTree binary = BinaryTinyTreeTests.writeAndOpen(tree, tempDir);
+
+		resolvers = Arrays.asList(new MappingResolverImpl(() -> tree, "named"), new MappingResolverImpl(() -> binary, "named"));
+	}
+
+	@Test
+	public void classes() {
+		for (MappingResolverImpl resolver : resolvers) {
+			assertEquals("named", resolver.getCurrentRuntimeNamespace());
+			assertEquals(new HashSet<>(Arrays.asList("official", "intermediary", "named")), new HashSet<>(resolver.getNamespaces()));
+
+			assertEquals("net.minecraft.Entity", resolver.mapClassName("official", "a"));
+			assertEquals("net.minecraft.Entity", resolver.mapClassName("intermediary", "net.minecraft.class_1"));
+			assertEquals("net.minecraft.Outer$Inner", resolver.mapClassName("intermediary", "net.minecraft.class_3$class_4"));
+			assertEquals("net.minecraft.class_3", resolver.mapClassName("official", "c"));
+			assertEquals("net.minecraft.World", resolver.mapClassName("named", "net.minecraft.World"));
+			assertEquals("java.lang.Object", resolver.mapClassName("official", "java.lang.Object"));
+
+			assertEquals("a", resolver.unmapClassName("official", "net.minecraft.Entity"));
+			assertEquals("net.minecraft.class_2", resolver.unmapClassName("intermediary", "net.minecraft.World"));
+			assertEquals("java.lang.Object", resolver.unmapClassName("official", "java.lang.Object"));
+
+			assertArrayEquals(new String[] { "net.minecraft.Entity", "java.lang.Object", "net.minecraft.World" },
+					resolver.mapClassNames("official", "a", "java.lang.Object", "b"));
+
+			assertThrows(IllegalArgumentException.class, () -> resolver.mapClassName("intermediary", "net/minecraft/class_1"));
+			assertThrows(IllegalArgumentException.class, () -> resolver.unmapClassName("intermediary", "net/minecraft/World"));
+			assertThrows(IllegalArgumentException.class, () -> resolver.mapClassNames("official", "a", "net/minecraft/class_1"));
+			assertThrows(IllegalArgumentException.class, () -> resolver.mapClassName("unknown", "a"));
+		}
+	}
+
+	@Test
+	public void members() {
+		for (MappingResolverImpl resolver : resolvers) {
+			assertEquals("age", resolver.mapFieldName("official", "a", "a", "I"));
+			assertEquals("world", resolver.mapFieldName("official", "a", "b", "Lb;"));
+			assertEquals("id", resolver.mapFieldName("official", "a", "b", "J"));
+			assertEquals("world", resolver.mapFieldName("intermediary", "net.minecraft.class_1", "field_2", "Lnet/minecraft/class_2;"));
+
+			// overloads only differ in their descriptor
+			assertEquals("setWorld", resolver.mapMethodName("official", "a", "a", "(Lb;)V"));
+			assertEquals("tick", resolver.mapMethodName("official", "a", "a", "()V"));
+			assertEquals("tick", resolver.mapMethodName("intermediary", "net.minecraft.class_1", "method_3", "(I)V"));
+			assertEquals("spawn", resolver.mapMethodName("intermediary", "net.minecraft.class_2", "method_4", "(Lnet/minecraft/class_1;)Z"));
+
+			// anything not in the tables passes through
+			assertEquals("a", resolver.mapFieldName("official", "a", "a", "J"));
+			assertEquals("a", resolver.mapMethodName("official", "a", "a", "(J)V"));
+			assertEquals("missing", resolver.mapMethodName("official", "a", "missing", "()V"));
+			assertEquals("a", resolver.mapMethodName("official", "java.lang.Object", "a", "()V"));
+			assertEquals("a", resolver.mapFieldName("official", "b", "a", "I"));
+
+			assertThrows(IllegalArgumentException.class, () -> resolver.mapFieldName("official", "net/minecraft/class_1", "a", "I"));
+			assertThrows(IllegalArgumentException.class, () -> resolver.mapMethodName("unknown", "a", "a", "()V"));
+		}
+	}
+
+	@Test
+	public void largeMemberTables() {
+		for (MappingResolverImpl resolver : resolvers) {
+			for (int i = 0; i < MEMBER_COUNT; i++) {
+				assertEquals("fieldName" + i, resolver.mapFieldName("official", "d", "f" + i, "I"));
+				assertEquals("methodName" + i, resolver.mapMethodName("official", "d", "m" + i, "()V"));
+				assertEquals("overloadName" + i, resolver.mapMethodName("official", "d", "m" + i, "(I)V"));
+				assertEquals("overloadName" + i, resolver.mapMethodName("intermediary", "net.minecraft.class_5", "method_" + (200 + i), "(I)V"));
+			}
+
+			assertEquals("f" + MEMBER_COUNT, resolver.mapFieldName("official", "d", "f" + MEMBER_COUNT, "I"));
+			assertEquals("m0", resolver.mapMethodName("official", "d", "m0", "(J)V"));
+			assertEquals("a", resolver.mapMethodName("official", "d", "a", "()V"));
+			assertEquals("z", resolver.mapMethodName("official", "d", "z", "()V"));
+		}
+	}
+
+	@Test
+	public void batchMembers() {
+		for (MappingResolverImpl resolver : resolvers) {
+			String[] names = { "m1", "m1", "m99", "missing", "m2" };
+			String[] descriptors = { "()V", "(I)V", "()V", "()V", "(J)V" };
+			String[] expected = new String[names.length];
+
+			for (int i = 0; i < names.length; i++) {
+				expected[i] = resolver.mapMethodName("official", "d", names[i], descriptors[i]);
+			}
+
+			assertArrayEquals(new String[] { "methodName1", "overloadName1", "methodName99", "missing", "m2" }, expected);
+			assertArrayEquals(expected, resolver.mapMethodNames("official", "d", names, descriptors));
+			assertArrayEquals(new String[] { "age", "id", "b" },
+					resolver.mapFieldNames("official", "a", new String[] { "a", "b", "b" }, new String[] { "I", "J", "I" }));
+
+			assertThrows(IllegalArgumentException.class, () -> resolver.mapMethodNames("official", "d", names, new String[] { "()V" }));
+			assertThrows(IllegalArgumentException.class, () -> resolver.mapFieldNames("official", "net/minecraft/class_1", new String[0], new String[0]));
+		}
+	}
+
+	@Test
+	public void duplicateMembers() throws IOException {
+		TinyTree tree = BinaryTinyTreeTests.parse("tiny\t2\t0\tofficial\tintermediary\tnamed\n"
+				+ "c\ta\tnet/minecraft/class_1\tnet/minecraft/Entity\n"
+				+ "\tf\tI\ta\tfield_1\tfirst\n"
+				+ "\tm\t()V\ta\tmethod_1\tfirst\n"
+				+ "\tf\tI\tb\tfield_2\tother\n"
+				+ "\tf\tI\ta\tfield_3\tsecond\n"
+				+ "\tm\t()V\ta\tmethod_2\tsecond\n"
+				+ "\tm\t()V\ta\tmethod_3\tlast\n");
+		TinyTree binary = BinaryTinyTreeTests.writeAndOpen(tree, tempDir);
+
+		for (TinyTree mappings : Arrays.asList(tree, binary)) {
+			MappingResolverImpl resolver = new MappingResolverImpl(() -> mappings, "named");
+
+			// the last definition wins
+			assertEquals("second", resolver.mapFieldName("official", "a", "a", "I"));
+			assertEquals("last", resolver.mapMethodName("official", "a", "a", "()V"));
+			assertEquals("other", resolver.mapFieldName("official", "a", "b", "I"));
+			assertEquals("first", resolver.mapFieldName("intermediary", "net.minecraft.class_1", "field_1", "I"));
+		}
+	}
+
+	@Test
+	public void descriptors() {
+		for (MappingResolverImpl resolver : resolvers) {
+			assertEquals("Lnet/minecraft/Entity;", resolver.mapDescriptor("official", "La;"));
+			assertEquals("[[Lnet/minecraft/Outer$Inner;", resolver.mapDescriptor("intermediary", "[[Lnet/minecraft/class_3$class_4;"));
+			assertEquals("(Lnet/minecraft/World;ILjava/lang/String;)Lnet/minecraft/Entity;", resolver.mapDescriptor("official", "(Lb;ILjava/lang/String;)La;"));
+			assertEquals("J", resolver.mapDescriptor("official", "J"));
+			// classes unknown to the namespace pass through
+			assertEquals("[Ljava/lang/Object;", resolver.mapDescriptor("official", "[Ljava/lang/Object;"));
+			assertEquals("(Lnet/minecraft/class_5;)V", resolver.mapDescriptor("official", "(Lnet/minecraft/class_5;)V"));
+		}
+	}
+}
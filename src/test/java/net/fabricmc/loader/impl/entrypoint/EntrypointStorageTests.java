@@ -0,0 +1,184 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.impl.entrypoint;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Constructor;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import net.fabricmc.loader.api.EntrypointException;
+import net.fabricmc.loader.api.LanguageAdapter;
+import net.fabricmc.loader.api.LanguageAdapterException;
+import net.fabricmc.loader.api.ModContainer;
+import net.fabricmc.loader.api.entrypoint.EntrypointContainer;
+import net.fabricmc.loader.api.metadata.ModMetadata;
+import net.fabricmc.loader.impl.ModContainerImpl;
+import net.fabricmc.loader.impl.metadata.BuiltinModMetadata;
+import net.fabricmc.loader.impl.metadata.EntrypointMetadata;
+import net.fabricmc.loader.impl.metadata.LoaderModMetadata;
+
+final class EntrypointStorageTests {
+	private final List<String> created = new ArrayList<>();
+	private boolean failing;
+
+	private final LanguageAdapter adapter = new LanguageAdapter() {
+		@Override
+		public <T> T create(ModContainer mod, String value, Class<T> type) throws LanguageAdapterException {
+			if (failing) throw new LanguageAdapterException("test failure");
+
+			created.add(value);
+
+			return type.cast(new StringBuilder(value));
+		}
+	};
+
+	@Test
+	public void frozen() throws Exception {
+		EntrypointStorage storage = createStorage();
+		storage.freeze();
+
+		ModContainerImpl mod = createMod("mod-b");
+
+		assertThrows(IllegalStateException.class, () -> storage.add(mod, "main", createEntrypoint("value"), Collections.singletonMap("default", adapter)));
+		assertThrows(IllegalStateException.class, () -> storage.addDeprecated(mod, "default", "value"));
+		assertEquals(2, storage.getEntrypoints("main", CharSequence.class).size());
+	}
+
+	@Test
+	public void entrypoints() throws Exception {
+		EntrypointStorage storage = createStorage();
+
+		// not memoized before freezing, but each entry still creates its instance only once per type
+		List<CharSequence> first = storage.getEntrypoints("main", CharSequence.class);
+		List<CharSequence> second = storage.getEntrypoints("main", CharSequence.class);
+
+		assertNotSame(first, second);
+		assertEquals(first, second);
+		assertEquals(2, created.size());
+
+		storage.freeze();
+		first = storage.getEntrypoints("main", CharSequence.class);
+		second = storage.getEntrypoints("main", CharSequence.class);
+
+		assertEquals("first", first.get(0).toString());
+		assertEquals("second", first.get(1).toString());
+		assertSame(first.get(0), second.get(0));
+		assertEquals(2, created.size());
+
+		// memoized, but every caller gets its own list to sort or filter
+		assertNotSame(first, second);
+		first.sort(Comparator.comparing(CharSequence::toString).reversed());
+		first.clear();
+		assertEquals(second, storage.getEntrypoints("main", CharSequence.class));
+
+		// memoized per type
+		List<Object> other = storage.getEntrypoints("main", Object.class);
+
+		assertEquals(other, storage.getEntrypoints("main", Object.class));
+		assertNotSame(second.get(0), other.get(0));
+		assertEquals(4, created.size());
+
+		assertTrue(storage.getEntrypoints("missing", CharSequence.class).isEmpty());
+		assertFalse(storage.hasEntrypoints("missing"));
+	}
+
+	@Test
+	public void containers() throws Exception {
+		EntrypointStorage storage = createStorage();
+		storage.freeze();
+
+		List<EntrypointContainer<CharSequence>> containers = storage.getEntrypointContainers("main", CharSequence.class);
+
+		assertEquals(2, containers.size());
+		assertEquals("mod-a", containers.get(0).getProvider().getMetadata().getId());
+
+		// the caller's own list
+		containers.clear();
+		containers = storage.getEntrypointContainers("main", CharSequence.class);
+		assertEquals(2, containers.size());
+
+		// new style entrypoints are still created lazily, and only once
+		assertTrue(created.isEmpty());
+		assertEquals("second", containers.get(1).getEntrypoint().toString());
+		assertSame(containers.get(1).getEntrypoint(), storage.getEntrypoints("main", CharSequence.class).get(1));
+		assertEquals(2, created.size());
+	}
+
+	@Test
+	public void failures() throws Exception {
+		EntrypointStorage storage = createStorage();
+		storage.freeze();
+
+		failing = true;
+		EntrypointException exc = assertThrows(EntrypointException.class, () -> storage.getEntrypoints("main", CharSequence.class));
+
+		assertEquals("main", exc.getKey());
+		assertTrue(exc.getCause() instanceof LanguageAdapterException);
+		assertEquals(1, exc.getSuppressed().length);
+
+		// failed lookups aren't memoized
+		failing = false;
+		assertEquals(2, storage.getEntrypoints("main", CharSequence.class).size());
+	}
+
+	private EntrypointStorage createStorage() throws Exception {
+		EntrypointStorage ret = new EntrypointStorage();
+		ModContainerImpl mod = createMod("mod-a");
+		Map<String, LanguageAdapter> adapterMap = Collections.singletonMap("default", adapter);
+
+		ret.add(mod, "main", createEntrypoint("first"), adapterMap);
+		ret.add(mod, "main", createEntrypoint("second"), adapterMap);
+
+		return ret;
+	}
+
+	private static ModContainerImpl createMod(String id) throws Exception {
+		// parsed metadata would need a game dir for the dependency overrides, wrap builtin metadata instead (package private)
+		Constructor<?> wrapper = Class.forName("net.fabricmc.loader.impl.discovery.BuiltinMetadataWrapper").getDeclaredConstructor(ModMetadata.class);
+		wrapper.setAccessible(true);
+		LoaderModMetadata metadata = (LoaderModMetadata) wrapper.newInstance(new BuiltinModMetadata.Builder(id, "1.0.0").build());
+
+		return new ModContainerImpl(metadata, Paths.get(id));
+	}
+
+	private static EntrypointMetadata createEntrypoint(String value) {
+		return new EntrypointMetadata() {
+			@Override
+			public String getAdapter() {
+				return "default";
+			}
+
+			@Override
+			public String getValue() {
+				return value;
+			}
+		};
+	}
+}
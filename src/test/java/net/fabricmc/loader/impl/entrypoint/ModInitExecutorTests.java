@@ -0,0 +1,153 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.impl.entrypoint;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+final class ModInitExecutorTests {
+	private final ModInitExecutor executor = new ModInitExecutor(id -> id.equals("a") || id.equals("b"));
+	private final List<String> order = Collections.synchronizedList(new ArrayList<>());
+
+	@Test
+	public void taskDependencies() {
+		// submitted before its dependency, needs to wait for it anyway
+		executor.submit("a", "second", Collections.singletonList("a:first"), record("a:second"));
+		executor.submit("a", "first", Collections.emptyList(), record("a:first"));
+		executor.awaitAll();
+
+		assertEquals(Arrays.asList("a:first", "a:second"), order);
+	}
+
+	@Test
+	public void modDependencies() throws InterruptedException {
+		CountDownLatch release = new CountDownLatch(1);
+
+		executor.submit("b", "task", Collections.singletonList("a"), record("b:task"));
+		executor.submit("a", "slow", Collections.emptyList(), () -> {
+			await(release);
+			order.add("a:slow");
+		});
+		executor.submit("a", "fast", Collections.emptyList(), record("a:fast"));
+
+		// the mod dependency can't resolve before all of a's tasks finished
+		Thread.sleep(50);
+		assertFalse(order.contains("b:task"));
+		release.countDown();
+		executor.awaitAll();
+
+		assertEquals(3, order.size());
+		assertEquals("b:task", order.get(2));
+	}
+
+	@Test
+	public void absentDependencies() {
+		executor.submit("a", "task", Arrays.asList("c", "c:task"), record("a:task"));
+		executor.awaitAll();
+
+		assertEquals(Collections.singletonList("a:task"), order);
+	}
+
+	@Test
+	public void cycles() {
+		assertThrows(IllegalArgumentException.class, () -> executor.submit("a", "self", Collections.singletonList("a:self"), record("a:self")));
+		assertThrows(IllegalArgumentException.class, () -> executor.submit("a", "ownMod", Collections.singletonList("a"), record("a:ownMod")));
+
+		executor.submit("a", "x", Collections.singletonList("b:y"), record("a:x"));
+		executor.submit("b", "y", Collections.singletonList("b:z"), record("b:y"));
+		assertThrows(IllegalArgumentException.class, () -> executor.submit("b", "z", Collections.singletonList("a:x"), record("b:z")));
+		assertThrows(IllegalArgumentException.class, () -> executor.submit("b", "z", Collections.singletonList("a"), record("b:z")));
+
+		// a rejected submission leaves no trace, so the chain can still be completed
+		executor.submit("b", "z", Collections.emptyList(), record("b:z"));
+		executor.awaitAll();
+
+		assertEquals(Arrays.asList("b:z", "b:y", "a:x"), order);
+	}
+
+	@Test
+	public void invalidSubmissions() {
+		assertThrows(IllegalArgumentException.class, () -> executor.submit("c", "task", Collections.emptyList(), record("c:task")));
+		assertThrows(IllegalArgumentException.class, () -> executor.submit("a", "", Collections.emptyList(), record("a:")));
+		assertThrows(IllegalArgumentException.class, () -> executor.submit("a", "b:task", Collections.emptyList(), record("a:b:task")));
+
+		executor.submit("a", "task", Collections.emptyList(), record("a:task"));
+		assertThrows(IllegalArgumentException.class, () -> executor.submit("a", "task", Collections.emptyList(), record("a:task")));
+
+		executor.awaitAll();
+		assertThrows(IllegalStateException.class, () -> executor.submit("b", "late", Collections.emptyList(), record("b:late")));
+	}
+
+	@Test
+	public void failures() {
+		RuntimeException failure = new RuntimeException("test failure");
+
+		CompletableFuture<Void> failing = executor.submit("a", "failing", Collections.emptyList(), () -> {
+			throw failure;
+		});
+		CompletableFuture<Void> dependent = executor.submit("b", "dependent", Collections.singletonList("a:failing"), record("b:dependent"));
+		CompletableFuture<Void> independent = executor.submit("b", "independent", Collections.emptyList(), record("b:independent"));
+
+		RuntimeException exc = assertThrows(RuntimeException.class, executor::awaitAll);
+
+		// only the failing task gets reported, its dependent never ran
+		assertSame(failure, exc.getCause());
+		assertEquals(0, exc.getSuppressed().length);
+		assertEquals(Collections.singletonList("b:independent"), order);
+
+		assertTrue(failing.isCompletedExceptionally());
+		assertTrue(dependent.isCompletedExceptionally());
+		assertFalse(independent.isCompletedExceptionally());
+		assertThrows(CompletionException.class, dependent::join);
+	}
+
+	@Test
+	public void missingDependencies() {
+		executor.submit("a", "task", Collections.singletonList("b:missing"), record("a:task"));
+
+		RuntimeException exc = assertThrows(RuntimeException.class, executor::awaitAll);
+
+		assertTrue(exc.getCause() instanceof IllegalStateException);
+		assertTrue(order.isEmpty());
+	}
+
+	private Runnable record(String id) {
+		return () -> order.add(id);
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			if (!latch.await(10, TimeUnit.SECONDS)) throw new IllegalStateException("timed out");
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.impl.launch.knot;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+final class ClassPathIndexTests {
+	@TempDir
+	Path tempDir;
+
+	private ClassPathIndex index;
+
+	@BeforeEach
+	public void setup() {
+		index = new ClassPathIndex();
+	}
+
+	@Test
+	public void classPathOrder() throws IOException {
+		add(createJar("first.jar", "pkg/a.txt", "first", "pkg/first.txt", "first"));
+		add(createDir("dir", "pkg/a.txt", "dir", "other/b.txt", "dir"));
+		add(createJar("last.jar", "pkg/a.txt", "last", "root.txt", "last"));
+
+		assertEquals("first", getResource("pkg/a.txt"));
+		assertEquals("first", getResource("pkg/first.txt"));
+		assertEquals("dir", getResource("other/b.txt"));
+		assertEquals("last", getResource("root.txt"));
+		assertEquals(Arrays.asList("first", "dir", "last"), getResources("pkg/a.txt"));
+	}
+
+	@Test
+	public void directoryBeforeArchive() throws IOException {
+		add(createDir("dir", "pkg/a.txt", "dir"));
+		add(createJar("jar.jar", "pkg/a.txt", "jar"));
+
+		assertEquals("dir", getResource("pkg/a.txt"));
+		assertEquals(Arrays.asList("dir", "jar"), getResources("pkg/a.txt"));
+	}
+
+	@Test
+	public void missing() throws IOException {
+		assertNull(getResource("pkg/a.txt"));
+		assertEquals(Collections.emptyList(), getResources("pkg/a.txt"));
+
+		add(createJar("jar.jar", "pkg/a.txt", "jar"));
+
+		assertNull(getResource("pkg/missing.txt"));
+		assertNull(getResource("missing/a.txt"));
+		assertNull(getResource("a.txt"));
+		assertNull(index.findClassFile("pkg/Missing.class"));
+		assertEquals(Collections.emptyList(), getResources("missing/a.txt"));
+	}
+
+	@Test
+	public void directories() throws IOException {
+		// no explicit directory entries, like most jars built by tools other than the jar command
+		Path jar = createJar("jar.jar", "assets/modid/lang/en_us.json", "jar", "data/modid/tags/a.json", "jar");
+		add(jar);
+
+		for (String name : new String[] { "assets", "assets/", "assets/modid", "assets/modid/", "assets/modid/lang/" }) {
+			URL url = index.getResource(name);
+
+			assertNotNull(url, name);
+			assertEquals("jar:" + jar.toUri().toURL() + "!/" + name, url.toString());
+			assertEquals(1, getResources(name, false).size());
+		}
+
+		assertNull(index.getResource("assets/other"));
+		assertNull(index.getResource("assets/mod"));
+		assertNull(index.getResource("assets/modid/lang/en_us.json/"));
+		assertEquals("jar", getResource("assets/modid/lang/en_us.json"));
+
+		// directories of all entries are found in class path order
+		add(createDir("dir", "assets/modid/textures/a.png", "dir"));
+		add(createJar("other.jar", "assets/other/a.txt", "other"));
+
+		assertEquals(2, getResources("assets/modid", false).size());
+		assertEquals(3, getResources("assets/", false).size());
+	}
+
+	@Test
+	public void directoryChanges() throws IOException {
+		Path dir = createDir("dir");
+		add(dir);
+
+		assertNull(getResource("pkg/a.txt"));
+
+		// directories aren't indexed, so new files show up
+		write(dir.resolve("pkg/a.txt"), "dir");
+		assertEquals("dir", getResource("pkg/a.txt"));
+	}
+
+	@Test
+	public void multiReleaseArchive() throws IOException {
+		Manifest manifest = new Manifest();
+		manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		manifest.getMainAttributes().putValue("Multi-Release", "true");
+
+		add(createJar("first.jar", "pkg/a.txt", "first"));
+		add(createJar("mr.jar", manifest, "pkg/a.txt", "mr", "mr/b.txt", "mr"));
+
+		assertEquals("first", getResource("pkg/a.txt"));
+		assertEquals("mr", getResource("mr/b.txt"));
+		assertEquals(Arrays.asList("first", "mr"), getResources("pkg/a.txt"));
+	}
+
+	@Test
+	public void classFiles() throws IOException {
+		add(createJar("jar.jar", "pkg/A.class", "jar"));
+		add(createDir("dir", "pkg/B.class", "dir"));
+
+		assertNotNull(index.findClassFile("pkg/A.class"));
+		assertNotNull(index.findClassFile("pkg/B.class"));
+		assertNull(index.findClassFile("pkg/C.class"));
+	}
+
+	@Test
+	public void replace() throws IOException {
+		Path original = createJar("original.jar", "pkg/a.txt", "original", "pkg/original.txt", "original");
+		add(original);
+		add(createJar("last.jar", "pkg/a.txt", "last"));
+		index.replace(original.toUri().toURL(), createJar("replacement.jar", "pkg/a.txt", "replacement", "new/b.txt", "replacement").toUri().toURL());
+
+		// the replacement keeps the class path position, the original is gone
+		assertEquals("replacement", getResource("pkg/a.txt"));
+		assertEquals(Arrays.asList("replacement", "last"), getResources("pkg/a.txt"));
+		assertEquals("replacement", getResource("new/b.txt"));
+		assertNull(getResource("pkg/original.txt"));
+
+		URL unknown = tempDir.resolve("unknown.jar").toUri().toURL();
+		assertThrows(IllegalArgumentException.class, () -> index.replace(unknown, unknown));
+	}
+
+	private void add(Path path) throws IOException {
+		index.add(path.toUri().toURL());
+	}
+
+	private String getResource(String name) throws IOException {
+		URL url = index.getResource(name);
+		String ret = url != null ? read(url) : null;
+
+		try (InputStream is = index.getResourceAsStream(name)) {
+			assertEquals(ret, is != null ? read(is) : null);
+		}
+
+		return ret;
+	}
+
+	private List<String> getResources(String name) throws IOException {
+		return getResources(name, true);
+	}
+
+	private List<String> getResources(String name, boolean read) throws IOException {
+		List<String> ret = new ArrayList<>();
+
+		for (Enumeration<URL> e = index.getResources(name); e.hasMoreElements(); ) {
+			URL url = e.nextElement();
+			ret.add(read ? read(url) : url.toString());
+		}
+
+		return ret;
+	}
+
+	/**
+	 * @param contents alternating file names and contents
+	 */
+	private Path createJar(String name, String... contents) throws IOException {
+		return createJar(name, null, contents);
+	}
+
+	private Path createJar(String name, Manifest manifest, String... contents) throws IOException {
+		Path ret = tempDir.resolve(name);
+
+		try (OutputStream os = Files.newOutputStream(ret);
+				JarOutputStream jos = manifest != null ? new JarOutputStream(os, manifest) : new JarOutputStream(os)) {
+			for (int i = 0; i < contents.length; i += 2) {
+				jos.putNextEntry(new JarEntry(contents[i]));
+				jos.write(contents[i + 1].getBytes(StandardCharsets.UTF_8));
+				jos.closeEntry();
+			}
+		}
+
+		return ret;
+	}
+
+	private Path createDir(String name, String... contents) throws IOException {
+		Path ret = Files.createDirectories(tempDir.resolve(name));
+
+		for (int i = 0; i < contents.length; i += 2) {
+			write(ret.resolve(contents[i]), contents[i + 1]);
+		}
+
+		return ret;
+	}
+
+	private static void write(Path path, String contents) throws IOException {
+		Files.createDirectories(path.getParent());
+		Files.write(path, contents.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static String read(URL url) throws IOException {
+		try (InputStream is = url.openStream()) {
+			return read(is);
+		}
+	}
+
+	private static String read(InputStream is) throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		byte[] buffer = new byte[256];
+		int len;
+
+		while ((len = is.read(buffer)) > 0) {
+			os.write(buffer, 0, len);
+		}
+
+		return new String(os.toByteArray(), StandardCharsets.UTF_8);
+	}
+}
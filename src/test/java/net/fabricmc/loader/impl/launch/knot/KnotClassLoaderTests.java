@@ -0,0 +1,163 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.impl.launch.knot;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import net.fabricmc.api.EnvType;
+
+final class KnotClassLoaderTests {
+	private static final String CLASS_NAME = "knottest.Probe";
+	private static final String CLASS_FILE = "knottest/Probe.class";
+	private static final String RESOURCE_NAME = "knottest/probe.txt";
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	public void archiveMisses() throws IOException, ClassNotFoundException {
+		// without initialized transformers classes are defined as is
+		KnotClassLoader loader = new KnotClassLoader(false, EnvType.CLIENT, null);
+		Path original = createJar("original.jar", "knottest/other.txt", new byte[0]);
+		addURL(loader, original);
+
+		// archives can't change, misses are remembered until the class path does
+		assertTrue(loader.isCachingMisses());
+		assertNull(loader.getResource(RESOURCE_NAME));
+		assertNull(loader.getResourceAsStream(RESOURCE_NAME));
+		assertThrows(ClassNotFoundException.class, () -> loader.loadClass(CLASS_NAME));
+		assertEquals(1, loader.missingResources.size());
+		assertEquals(1, loader.missingClasses.size());
+
+		Path replacement = createJar("replacement.jar", RESOURCE_NAME, new byte[0], CLASS_FILE, createClass(CLASS_NAME));
+		loader.replaceURL(original.toUri().toURL(), replacement.toUri().toURL());
+
+		assertTrue(loader.isCachingMisses());
+		assertNotNull(loader.getResource(RESOURCE_NAME));
+		loader.getResourceAsStream(RESOURCE_NAME).close();
+
+		Class<?> cls = loader.loadClass(CLASS_NAME);
+
+		assertEquals(CLASS_NAME, cls.getName());
+		assertSame(loader, cls.getClassLoader());
+	}
+
+	@Test
+	public void directoryMisses() throws IOException, ClassNotFoundException {
+		KnotClassLoader loader = new KnotClassLoader(false, EnvType.CLIENT, null);
+		addURL(loader, createJar("jar.jar", "knottest/other.txt", new byte[0]));
+		Path dir = Files.createDirectory(tempDir.resolve("dir"));
+		addURL(loader, dir);
+
+		// directories can gain files at any time, so nothing is remembered
+		assertFalse(loader.isCachingMisses());
+		assertMissesNotCached(loader, dir);
+	}
+
+	@Test
+	public void developmentMisses() throws IOException, ClassNotFoundException {
+		KnotClassLoader loader = new KnotClassLoader(true, EnvType.CLIENT, null);
+		Path dir = Files.createDirectory(tempDir.resolve("dir"));
+		addURL(loader, dir);
+
+		assertFalse(loader.isCachingMisses());
+		assertMissesNotCached(loader, dir);
+	}
+
+	@Test
+	public void staleMisses() {
+		NegativeLookupCache cache = new NegativeLookupCache();
+
+		int generation = cache.getGeneration();
+		cache.add("a", generation);
+		assertTrue(cache.isMissing("a"));
+
+		// a miss computed before the class path changed must not be recorded afterwards
+		cache.invalidate();
+		assertFalse(cache.isMissing("a"));
+		cache.add("b", generation);
+		assertFalse(cache.isMissing("b"));
+
+		cache.add("b", cache.getGeneration());
+		assertTrue(cache.isMissing("b"));
+		assertEquals(1, cache.size());
+	}
+
+	private static void assertMissesNotCached(KnotClassLoader loader, Path dir) throws IOException, ClassNotFoundException {
+		assertNull(loader.getResource(RESOURCE_NAME));
+		assertThrows(ClassNotFoundException.class, () -> loader.loadClass(CLASS_NAME));
+		assertEquals(0, loader.missingResources.size());
+		assertEquals(0, loader.missingClasses.size());
+
+		// generated files show up without touching the class path
+		Files.createDirectories(dir.resolve("knottest"));
+		Files.write(dir.resolve(RESOURCE_NAME), new byte[0]);
+		Files.write(dir.resolve(CLASS_FILE), createClass(CLASS_NAME));
+
+		assertNotNull(loader.getResource(RESOURCE_NAME));
+		loader.getResourceAsStream(RESOURCE_NAME).close();
+		assertSame(loader, loader.loadClass(CLASS_NAME).getClassLoader());
+	}
+
+	private static void addURL(KnotClassLoader loader, Path path) throws IOException {
+		loader.addURL(path.toUri().toURL());
+	}
+
+	/**
+	 * @param contents alternating entry names and contents
+	 */
+	private Path createJar(String name, Object... contents) throws IOException {
+		Path ret = tempDir.resolve(name);
+
+		try (OutputStream os = Files.newOutputStream(ret);
+				JarOutputStream jos = new JarOutputStream(os)) {
+			for (int i = 0; i < contents.length; i += 2) {
+				jos.putNextEntry(new JarEntry((String) contents[i]));
+				jos.write((byte[]) contents[i + 1]);
+				jos.closeEntry();
+			}
+		}
+
+		return ret;
+	}
+
+	private static byte[] createClass(String name) {
+		ClassWriter cw = new ClassWriter(0);
+		cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name.replace('.', '/'), null, "java/lang/Object", null);
+		cw.visitEnd();
+
+		return cw.toByteArray();
+	}
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.impl.util.mappings;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import net.fabricmc.mapping.tree.ClassDef;
+import net.fabricmc.mapping.tree.Descriptored;
+import net.fabricmc.mapping.tree.FieldDef;
+import net.fabricmc.mapping.tree.LocalVariableDef;
+import net.fabricmc.mapping.tree.Mapped;
+import net.fabricmc.mapping.tree.MethodDef;
+import net.fabricmc.mapping.tree.ParameterDef;
+import net.fabricmc.mapping.tree.TinyMappingFactory;
+import net.fabricmc.mapping.tree.TinyTree;
+
+public final class BinaryTinyTreeTests {
+	public static final String MAPPINGS = "tiny\t2\t0\tofficial\tintermediary\tnamed\n"
+			+ "\ttest-property\ttest value\n"
+			+ "c\ta\tnet/minecraft/class_1\tnet/minecraft/Entity\n"
+			+ "\tc\tAn entity.\n"
+			+ "\tf\tI\ta\tfield_1\tage\n"
+			+ "\tf\tLb;\tb\tfield_2\tworld\n"
+			+ "\tf\tJ\tb\tfield_3\tid\n"
+			+ "\tm\t(Lb;)V\ta\tmethod_1\tsetWorld\n"
+			+ "\t\tc\tMoves the entity to another world.\n"
+			+ "\t\tp\t1\t\targ_1\tworld\n"
+			+ "\t\t\tc\tThe new world.\n"
+			+ "\t\tv\t2\t5\t1\t\tlocal_1\tprevious\n"
+			+ "\tm\t()V\ta\tmethod_2\ttick\n"
+			+ "\tm\t(I)V\ta\tmethod_3\ttick\n"
+			+ "c\tb\tnet/minecraft/class_2\tnet/minecraft/World\n"
+			+ "\tm\t(La;)Z\ta\tmethod_4\tspawn\n"
+			+ "c\tc\tnet/minecraft/class_3\n"
+			+ "c\tc$a\tnet/minecraft/class_3$class_4\tnet/minecraft/Outer$Inner\n";
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	public void roundTrip() throws IOException {
+		TinyTree tree = parse(MAPPINGS);
+		BinaryTinyTree binary = writeAndOpen(tree);
+		List<String> namespaces = tree.getMetadata().getNamespaces();
+
+		assertEquals(namespaces, binary.getMetadata().getNamespaces());
+		assertEquals(tree.getMetadata().getMajorVersion(), binary.getMetadata().getMajorVersion());
+		assertEquals(tree.getMetadata().getMinorVersion(), binary.getMetadata().getMinorVersion());
+		assertEquals(tree.getMetadata().getProperties(), binary.getMetadata().getProperties());
+		assertEquals(tree.getClasses().size(), binary.getClasses().size());
+
+		Iterator<ClassDef> it = binary.getClasses().iterator();
+
+		for (ClassDef cls : tree.getClasses()) {
+			ClassDef binaryCls = it.next();
+
+			assertMapped(namespaces, cls, binaryCls);
+			assertEquals(cls.getFields().size(), binaryCls.getFields().size());
+			assertEquals(cls.getMethods().size(), binaryCls.getMethods().size());
+
+			Iterator<FieldDef> fieldIt = binaryCls.getFields().iterator();
+
+			for (FieldDef field : cls.getFields()) {
+				assertDescriptored(namespaces, field, fieldIt.next());
+			}
+
+			Iterator<MethodDef> methodIt = binaryCls.getMethods().iterator();
+
+			for (MethodDef method : cls.getMethods()) {
+				MethodDef binaryMethod = methodIt.next();
+				assertDescriptored(namespaces, method, binaryMethod);
+				assertEquals(method.getParameters().size(), binaryMethod.getParameters().size());
+				assertEquals(method.getLocalVariables().size(), binaryMethod.getLocalVariables().size());
+
+				Iterator<ParameterDef> paramIt = binaryMethod.getParameters().iterator();
+
+				for (ParameterDef param : method.getParameters()) {
+					ParameterDef binaryParam = paramIt.next();
+					assertMapped(namespaces, param, binaryParam);
+					assertEquals(param.getLocalVariableIndex(), binaryParam.getLocalVariableIndex());
+				}
+
+				Iterator<LocalVariableDef> localIt = binaryMethod.getLocalVariables().iterator();
+
+				for (LocalVariableDef local : method.getLocalVariables()) {
+					LocalVariableDef binaryLocal = localIt.next();
+					assertMapped(namespaces, local, binaryLocal);
+					assertEquals(local.getLocalVariableIndex(), binaryLocal.getLocalVariableIndex());
+					assertEquals(local.getLocalVariableStartOffset(), binaryLocal.getLocalVariableStartOffset());
+					assertEquals(local.getLocalVariableTableIndex(), binaryLocal.getLocalVariableTableIndex());
+				}
+			}
+		}
+	}
+
+	@Test
+	public void classLookup() throws IOException {
+		TinyTree tree = parse(MAPPINGS);
+		BinaryTinyTree binary = writeAndOpen(tree);
+		List<String> namespaces = tree.getMetadata().getNamespaces();
+
+		for (ClassDef cls : tree.getClasses()) {
+			for (String ns : namespaces) {
+				ClassDef found = binary.getClassDef(cls.getName(ns), ns);
+
+				assertNotNull(found, cls.getName(ns));
+				assertMapped(namespaces, cls, found);
+			}
+
+			assertMapped(namespaces, cls, binary.getDefaultNamespaceClassMap().get(cls.getName(namespaces.get(0))));
+		}
+
+		assertEquals(tree.getDefaultNamespaceClassMap().keySet(), binary.getDefaultNamespaceClassMap().keySet());
+		assertNull(binary.getClassDef("net/minecraft/Missing", "named"));
+		assertNull(binary.getClassDef("a", "unknown"));
+		assertNull(binary.getDefaultNamespaceClassMap().get("missing"));
+	}
+
+	@Test
+	public void empty() throws IOException {
+		BinaryTinyTree binary = writeAndOpen(parse("tiny\t2\t0\tintermediary\tnamed\n"));
+
+		assertEquals(0, binary.getClasses().size());
+		assertNull(binary.getClassDef("a", "intermediary"));
+	}
+
+	@Test
+	public void invalidFile() throws IOException {
+		Path file = tempDir.resolve("invalid.bin");
+		Files.write(file, new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+
+		assertThrows(IOException.class, () -> BinaryTinyTree.open(file));
+	}
+
+	public static TinyTree parse(String mappings) throws IOException {
+		try (BufferedReader reader = new BufferedReader(new StringReader(mappings))) {
+			return TinyMappingFactory.loadWithDetection(reader);
+		}
+	}
+
+	public static BinaryTinyTree writeAndOpen(TinyTree tree, Path dir) throws IOException {
+		Path file = dir.resolve("mappings.bin");
+		BinaryTinyTree.write(tree, file);
+
+		return BinaryTinyTree.open(file);
+	}
+
+	private BinaryTinyTree writeAndOpen(TinyTree tree) throws IOException {
+		return writeAndOpen(tree, tempDir);
+	}
+
+	private static void assertMapped(List<String> namespaces, Mapped expected, Mapped actual) {
+		for (String ns : namespaces) {
+			assertEquals(expected.getName(ns), actual.getName(ns));
+			assertEquals(expected.getRawName(ns), actual.getRawName(ns));
+		}
+
+		assertEquals(expected.getComment(), actual.getComment());
+	}
+
+	private static void assertDescriptored(List<String> namespaces, Descriptored expected, Descriptored actual) {
+		assertMapped(namespaces, expected, actual);
+
+		for (String ns : namespaces) {
+			assertEquals(expected.getDescriptor(ns), actual.getDescriptor(ns));
+		}
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import net.fabricmc.loader.impl.transformer.EnvironmentStrippingData;
+
+final class ConstantPoolScannerTests {
+	@Test
+	public void plainClass() {
+		assertFalse(EnvironmentStrippingData.mayHaveAnnotations(createClass(null)));
+	}
+
+	@Test
+	public void annotatedClass() {
+		assertTrue(EnvironmentStrippingData.mayHaveAnnotations(createClass("Lnet/fabricmc/api/Environment;")));
+		assertTrue(EnvironmentStrippingData.mayHaveAnnotations(createClass("Lnet/fabricmc/api/EnvironmentInterface;")));
+		assertTrue(EnvironmentStrippingData.mayHaveAnnotations(createClass("Lnet/fabricmc/api/EnvironmentInterfaces;")));
+	}
+
+	@Test
+	public void similarNames() {
+		assertFalse(EnvironmentStrippingData.mayHaveAnnotations(createClass("Lnet/fabricmc/api/Environments;")));
+		assertFalse(EnvironmentStrippingData.mayHaveAnnotations(createClass("Lnet/fabricmc/api/Environmen;")));
+	}
+
+	@Test
+	public void invalidInput() {
+		byte[] cls = createClass(null);
+
+		// the scanner must not claim a class is clean if it can't read it completely
+		assertTrue(EnvironmentStrippingData.mayHaveAnnotations(Arrays.copyOf(cls, 20)));
+		assertTrue(EnvironmentStrippingData.mayHaveAnnotations(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12 }));
+	}
+
+	/**
+	 * Creates a class with constant pool entries of every common kind, including two slot long and double constants
+	 * ahead of the optional annotation.
+	 */
+	private static byte[] createClass(String annotationDesc) {
+		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "test/Scanned", null, "java/lang/Object", new String[] { "java/lang/Runnable" });
+		cw.visitField(Opcodes.ACC_STATIC, "l", "J", null, 1234567890123L).visitEnd();
+		cw.visitField(Opcodes.ACC_STATIC, "d", "D", null, 0.5).visitEnd();
+		cw.visitField(Opcodes.ACC_STATIC, "f", "F", null, 0.25f).visitEnd();
+		cw.visitField(Opcodes.ACC_STATIC, "i", "I", null, 123456).visitEnd();
+
+		MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "run", "()V", null, null);
+		mv.visitCode();
+		mv.visitLdcInsn("some string");
+		mv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/String", "valueOf", "(Ljava/lang/Object;)Ljava/lang/String;", false);
+		mv.visitInsn(Opcodes.POP);
+		mv.visitInsn(Opcodes.RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+
+		if (annotationDesc != null) {
+			cw.visitAnnotation(annotationDesc, false).visitEnd();
+		}
+
+		cw.visitEnd();
+
+		return cw.toByteArray();
+	}
+}